@@ -0,0 +1,77 @@
+package com.example.demo.student;
+
+import com.example.demo.DemoApplication;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Listing every student as managed entities, the way the list endpoint used
+ * to, against the unmanaged projection it uses now. Run with
+ * {@code -Djmh.args="StudentRead -prof gc"} to compare allocation as well.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class StudentReadBenchmark {
+
+    @Param({"10000"})
+    private int students;
+
+    private ConfigurableApplicationContext context;
+    private StudentRepository studentRepository;
+    private StudentService studentService;
+    private TransactionTemplate transactionTemplate;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        context = new SpringApplicationBuilder(DemoApplication.class)
+                .web(WebApplicationType.NONE)
+                .properties(
+                        "spring.datasource.url=jdbc:h2:mem:read-benchmark;DB_CLOSE_DELAY=-1",
+                        "spring.datasource.driver-class-name=org.h2.Driver",
+                        "spring.jpa.hibernate.ddl-auto=create-drop",
+                        "spring.jpa.show-sql=false",
+                        "spring.jpa.properties.hibernate.generate_statistics=false")
+                .run();
+        studentRepository = context.getBean(StudentRepository.class);
+        studentService = context.getBean(StudentService.class);
+        transactionTemplate = new TransactionTemplate(context.getBean(PlatformTransactionManager.class));
+
+        for (int from = 0; from < students; from += StudentService.MAX_BATCH_SIZE) {
+            List<Student> batch = new ArrayList<>();
+            for (int i = from; i < Math.min(from + StudentService.MAX_BATCH_SIZE, students); i++) {
+                batch.add(new Student("Student " + i, "student" + i + "@benchmark.com", Gender.values()[i % 3]));
+            }
+            studentService.addStudents(batch);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        context.close();
+    }
+
+    /**
+     * Managed entities in a read-write transaction, dirty checked on commit.
+     */
+    @Benchmark
+    public List<Student> managedEntities() {
+        return transactionTemplate.execute(status -> studentRepository.findAll());
+    }
+
+    @Benchmark
+    public List<Student> unmanagedProjection() {
+        return studentService.getAllStudents();
+    }
+}
@@ -0,0 +1,76 @@
+package com.example.demo.student;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Jackson cost of the list endpoint body for lists of varying size, in each
+ * format the API can negotiate. Payload sizes are printed during setup.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class StudentSerializationBenchmark {
+
+    @Param({"10", "1000", "10000"})
+    private int size;
+
+    @Param({"json", "cbor", "smile"})
+    private String format;
+
+    private ObjectWriter writer;
+    private ObjectReader reader;
+    private List<Student> students;
+    private byte[] payload;
+
+    @Setup
+    public void setUp() throws JsonProcessingException {
+        ObjectMapper objectMapper = objectMapper(format);
+        writer = objectMapper.writerFor(objectMapper.getTypeFactory()
+                .constructCollectionType(List.class, Student.class));
+        reader = objectMapper.readerFor(objectMapper.getTypeFactory()
+                .constructCollectionType(List.class, Student.class));
+        students = new ArrayList<>();
+        for (long i = 1; i <= size; i++) {
+            Student student = new Student("Student " + i, "student" + i + "@benchmark.com", Gender.values()[(int) (i % 3)]);
+            student.setId(i);
+            students.add(student);
+        }
+        payload = writer.writeValueAsBytes(students);
+        System.out.printf("%n%s, %d students: %d bytes%n", format, size, payload.length);
+    }
+
+    private static ObjectMapper objectMapper(String format) {
+        switch (format) {
+            case "cbor":
+                return new ObjectMapper(new CBORFactory());
+            case "smile":
+                return new ObjectMapper(new SmileFactory());
+            default:
+                return new ObjectMapper();
+        }
+    }
+
+    @Benchmark
+    public byte[] serialize() throws JsonProcessingException {
+        return writer.writeValueAsBytes(students);
+    }
+
+    @Benchmark
+    public List<Student> deserialize() throws IOException {
+        return reader.readValue(payload);
+    }
+}
@@ -0,0 +1,85 @@
+package com.example.demo.student;
+
+import com.example.demo.DemoApplication;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * {@link StudentService} against an in-memory H2 database, with and without
+ * the student cache.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class StudentServiceBenchmark {
+
+    @Param({"1000"})
+    private int students;
+
+    @Param({"caffeine", "none"})
+    private String cacheType;
+
+    private final AtomicLong emails = new AtomicLong();
+    private ConfigurableApplicationContext context;
+    private StudentService studentService;
+    private List<Long> ids;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        context = new SpringApplicationBuilder(DemoApplication.class)
+                .web(WebApplicationType.NONE)
+                .properties(
+                        "spring.datasource.url=jdbc:h2:mem:benchmark;DB_CLOSE_DELAY=-1",
+                        "spring.datasource.driver-class-name=org.h2.Driver",
+                        "spring.jpa.hibernate.ddl-auto=create-drop",
+                        "spring.jpa.show-sql=false",
+                        "spring.cache.type=" + cacheType,
+                        "spring.cache.caffeine.spec=maximumSize=10000,expireAfterWrite=5m")
+                .run();
+        studentService = context.getBean(StudentService.class);
+
+        List<Student> batch = new ArrayList<>();
+        for (int i = 0; i < students; i++) {
+            batch.add(newStudent());
+        }
+        ids = new ArrayList<>();
+        studentService.addStudents(batch).forEach(result -> ids.add(result.getId()));
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public Student addStudent() {
+        return studentService.addStudent(newStudent());
+    }
+
+    @Benchmark
+    public Object getStudentById() {
+        Long id = ids.get(ThreadLocalRandom.current().nextInt(ids.size()));
+        return studentService.getStudentById(id);
+    }
+
+    @Benchmark
+    public Object getAllStudents() {
+        return studentService.getAllStudents();
+    }
+
+    private Student newStudent() {
+        long n = emails.incrementAndGet();
+        return new Student("Student " + n, "student" + n + "@benchmark.com", Gender.values()[(int) (n % 3)]);
+    }
+}
@@ -0,0 +1,176 @@
+package com.example.demo;
+
+import com.example.demo.config.VirtualThreads;
+import com.example.demo.student.Gender;
+import com.example.demo.student.Student;
+import com.example.demo.student.StudentRepository;
+import org.aspectj.lang.ProceedingJoinPoint;
+import org.aspectj.lang.annotation.Around;
+import org.aspectj.lang.annotation.Aspect;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.boot.web.context.WebServerApplicationContext;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.context.annotation.Bean;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+/**
+ * Reports request throughput of the platform and virtual execution modes
+ * with {@code loadtest.clients} concurrent clients reading students by id.
+ *
+ * <p>Each service call sleeps {@code loadtest.db.latency.ms} while holding a
+ * database permit, which stands in for a blocking JDBC round trip. Both modes
+ * get the same capacity, {@code loadtest.pool.size} connections and as many
+ * Tomcat threads in platform mode, so what differs is only how requests wait
+ * for it. Which mode wins depends on the machine, so only errors fail the
+ * test; the numbers are printed for comparison.
+ */
+class ExecutionModeLoadIT {
+
+    private static final int CLIENTS = Integer.getInteger("loadtest.clients", 1000);
+    private static final int POOL_SIZE = Integer.getInteger("loadtest.pool.size", 200);
+    private static final long LATENCY_MS = Long.getLong("loadtest.db.latency.ms", 20);
+    private static final long WARM_UP_SECONDS = Long.getLong("loadtest.warmup.seconds", 3);
+    private static final long DURATION_SECONDS = Long.getLong("loadtest.duration.seconds", 10);
+    private static final int STUDENTS = 100;
+
+    @Test
+    void bothModesServeAllRequestsAtEqualDatabaseCapacity() throws Exception {
+        assumeTrue(VirtualThreads.isSupported(), "virtual threads need a Java 21+ runtime");
+
+        Result platform = run("platform");
+        Result virtual = run("virtual");
+
+        System.out.printf("platform: %s%nvirtual:  %s%n", platform, virtual);
+        assertThat(platform.errors).isZero();
+        assertThat(virtual.errors).isZero();
+        assertThat(platform.completed).isPositive();
+        assertThat(virtual.completed).isPositive();
+    }
+
+    private Result run(String mode) throws Exception {
+        try (ConfigurableApplicationContext context = new SpringApplicationBuilder(
+                DemoApplication.class, SimulatedDatabaseLatency.class)
+                .run(
+                        "--server.port=0",
+                        "--student.execution.mode=" + mode,
+                        "--server.tomcat.threads.max=" + POOL_SIZE,
+                        "--student.execution.db-acquire-timeout-ms=30000",
+                        "--student.concurrency.enabled=false",
+                        "--spring.datasource.url=jdbc:h2:mem:load-" + mode + ";DB_CLOSE_DELAY=-1",
+                        "--spring.datasource.hikari.maximum-pool-size=" + POOL_SIZE,
+                        "--spring.datasource.hikari.minimum-idle=" + POOL_SIZE,
+                        "--spring.jpa.show-sql=false",
+                        "--spring.cache.type=none",
+                        "--logging.level.root=WARN")) {
+            List<Long> ids = seed(context.getBean(StudentRepository.class));
+            int port = ((WebServerApplicationContext) context).getWebServer().getPort();
+            return load(URI.create("http://localhost:" + port + "/api/v1/students/"), ids);
+        }
+    }
+
+    private List<Long> seed(StudentRepository repository) {
+        List<Student> students = new ArrayList<>();
+        for (int i = 0; i < STUDENTS; i++) {
+            students.add(new Student("Student " + i, "student" + i + "@gmail.com", Gender.FEMALE));
+        }
+        List<Long> ids = new ArrayList<>();
+        repository.saveAll(students).forEach(student -> ids.add(student.getId()));
+        return ids;
+    }
+
+    private Result load(URI base, List<Long> ids) throws InterruptedException {
+        HttpClient client = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_1_1)
+                .connectTimeout(Duration.ofSeconds(10))
+                .build();
+        LongAdder completed = new LongAdder();
+        LongAdder errors = new LongAdder();
+        long measureFrom = System.nanoTime() + TimeUnit.SECONDS.toNanos(WARM_UP_SECONDS);
+        long end = measureFrom + TimeUnit.SECONDS.toNanos(DURATION_SECONDS);
+
+        // each permit is one client with a request in flight
+        Semaphore inFlight = new Semaphore(CLIENTS);
+        while (System.nanoTime() < end) {
+            if (!inFlight.tryAcquire(100, TimeUnit.MILLISECONDS)) {
+                continue;
+            }
+            Long id = ids.get(ThreadLocalRandom.current().nextInt(ids.size()));
+            HttpRequest request = HttpRequest.newBuilder(base.resolve(id.toString()))
+                    .timeout(Duration.ofSeconds(30))
+                    .build();
+            long sent = System.nanoTime();
+            client.sendAsync(request, HttpResponse.BodyHandlers.discarding())
+                    .whenComplete((response, failure) -> {
+                        if (sent >= measureFrom && sent < end) {
+                            boolean ok = failure == null && response.statusCode() == 200;
+                            (ok ? completed : errors).increment();
+                        }
+                        inFlight.release();
+                    });
+        }
+        inFlight.tryAcquire(CLIENTS, 60, TimeUnit.SECONDS);
+        return new Result(completed.sum(), errors.sum(), DURATION_SECONDS);
+    }
+
+    private static final class Result {
+        final long completed;
+        final long errors;
+        final long seconds;
+
+        Result(long completed, long errors, long seconds) {
+            this.completed = completed;
+            this.errors = errors;
+            this.seconds = seconds;
+        }
+
+        double throughput() {
+            return (double) completed / seconds;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%.0f req/s, %d requests, %d errors", throughput(), completed, errors);
+        }
+    }
+
+    /**
+     * Deliberately not a {@code @Configuration}: component scanning would pick
+     * it up and slow down every other load test on this classpath. Its bean is
+     * registered only because it is passed as a source above.
+     */
+    static class SimulatedDatabaseLatency {
+
+        @Bean
+        LatencyAspect latencyAspect() {
+            return new LatencyAspect();
+        }
+    }
+
+    @Aspect
+    @Order(Ordered.LOWEST_PRECEDENCE)
+    static class LatencyAspect {
+
+        @Around("execution(public * com.example.demo.student.StudentService.getStudentById(..))")
+        public Object sleep(ProceedingJoinPoint joinPoint) throws Throwable {
+            Thread.sleep(LATENCY_MS);
+            return joinPoint.proceed();
+        }
+    }
+}
@@ -0,0 +1,357 @@
+package com.example.demo;
+
+import com.example.demo.student.Gender;
+import com.example.demo.student.Student;
+import com.example.demo.student.StudentRepository;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.HdrHistogram.ConcurrentHistogram;
+import org.HdrHistogram.Histogram;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.boot.web.context.WebServerApplicationContext;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Drives a mix of student API requests at a fixed arrival rate and fails when
+ * latency, errors or throughput miss their thresholds.
+ *
+ * <p>The model is open: requests are started on schedule whether or not
+ * earlier ones have completed, and latency is measured from the time a request
+ * was due rather than when it was sent, so a stalled server shows up in the
+ * percentiles instead of slowing the load down.
+ *
+ * <p>Configured with system properties:
+ * <ul>
+ *     <li>{@code loadtest.rate}: requests started per second</li>
+ *     <li>{@code loadtest.mix}: relative weight of each operation, e.g.
+ *     {@code create=10,get=50,update=10,delete=5,list=25}</li>
+ *     <li>{@code loadtest.warmup.seconds}, {@code loadtest.duration.seconds}</li>
+ *     <li>{@code loadtest.students}: students inserted before the run</li>
+ *     <li>{@code loadtest.max.in.flight}: requests outstanding before new ones
+ *     are counted as errors instead of sent</li>
+ *     <li>{@code loadtest.max.p99.ms}, {@code loadtest.max.error.rate} and
+ *     {@code loadtest.min.throughput.ratio}: thresholds failing the build</li>
+ * </ul>
+ */
+class StudentApiLoadIT {
+
+    private static final int RATE = Integer.getInteger("loadtest.rate", 50);
+    private static final String MIX = System.getProperty(
+            "loadtest.mix", "create=10,get=50,update=10,delete=5,list=25");
+    private static final long WARM_UP_SECONDS = Long.getLong("loadtest.warmup.seconds", 10);
+    private static final long DURATION_SECONDS = Long.getLong("loadtest.duration.seconds", 20);
+    private static final int STUDENTS = Integer.getInteger("loadtest.students", 1000);
+    private static final int MAX_IN_FLIGHT = Integer.getInteger("loadtest.max.in.flight", 2000);
+    private static final long MAX_P99_MS = Long.getLong("loadtest.max.p99.ms", 500);
+    private static final double MAX_ERROR_RATE = Double.parseDouble(
+            System.getProperty("loadtest.max.error.rate", "0.01"));
+    private static final double MIN_THROUGHPUT_RATIO = Double.parseDouble(
+            System.getProperty("loadtest.min.throughput.ratio", "0.95"));
+
+    /**
+     * Latencies up to a minute, at three significant digits.
+     */
+    private static final long HIGHEST_LATENCY_MICROS = TimeUnit.MINUTES.toMicros(1);
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final AtomicLong emails = new AtomicLong();
+
+    enum Operation {
+        CREATE, GET, UPDATE, DELETE, LIST
+    }
+
+    @Test
+    void studentApiMeetsLatencyAndErrorThresholds() throws Exception {
+        try (ConfigurableApplicationContext context = new SpringApplicationBuilder(DemoApplication.class)
+                .run(
+                        "--server.port=0",
+                        "--spring.datasource.url=jdbc:h2:mem:student-api-load;DB_CLOSE_DELAY=-1",
+                        "--spring.datasource.driver-class-name=org.h2.Driver",
+                        "--spring.jpa.hibernate.ddl-auto=create-drop",
+                        "--spring.jpa.show-sql=false",
+                        "--spring.jpa.properties.hibernate.generate_statistics=false",
+                        "--student.concurrency.enabled=false",
+                        "--logging.level.root=WARN")) {
+            IdPool ids = seed(context.getBean(StudentRepository.class));
+            int port = ((WebServerApplicationContext) context).getWebServer().getPort();
+            Report report = load(URI.create("http://localhost:" + port + "/api/v1/students/"), ids);
+
+            System.out.println(report);
+            assertThat(report.errorRate())
+                    .as("error rate")
+                    .isLessThanOrEqualTo(MAX_ERROR_RATE);
+            assertThat(report.throughput())
+                    .as("throughput against the %d req/s offered", RATE)
+                    .isGreaterThanOrEqualTo(RATE * MIN_THROUGHPUT_RATIO);
+            assertThat(report.total.getValueAtPercentile(99) / 1000)
+                    .as("p99 latency in ms")
+                    .isLessThanOrEqualTo(MAX_P99_MS);
+        }
+    }
+
+    private IdPool seed(StudentRepository repository) {
+        List<Student> students = new ArrayList<>();
+        for (int i = 0; i < STUDENTS; i++) {
+            students.add(newStudent());
+        }
+        IdPool ids = new IdPool();
+        repository.saveAll(students).forEach(student -> ids.add(student.getId()));
+        return ids;
+    }
+
+    private Report load(URI base, IdPool ids) throws InterruptedException {
+        HttpClient client = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_1_1)
+                .connectTimeout(Duration.ofSeconds(10))
+                .build();
+        Operation[] schedule = schedule(parseMix(MIX));
+        Report report = new Report();
+        AtomicInteger inFlight = new AtomicInteger();
+
+        long intervalNanos = TimeUnit.SECONDS.toNanos(1) / RATE;
+        long start = System.nanoTime();
+        long measureFrom = start + TimeUnit.SECONDS.toNanos(WARM_UP_SECONDS);
+        long end = measureFrom + TimeUnit.SECONDS.toNanos(DURATION_SECONDS);
+        for (long n = 0; ; n++) {
+            long due = start + n * intervalNanos;
+            if (due >= end) {
+                break;
+            }
+            long wait = due - System.nanoTime();
+            if (wait > 0) {
+                LockSupport.parkNanos(wait);
+            }
+            boolean measured = due >= measureFrom;
+            Operation operation = schedule[ThreadLocalRandom.current().nextInt(schedule.length)];
+            if (inFlight.get() >= MAX_IN_FLIGHT) {
+                if (measured) {
+                    report.error(operation);
+                }
+                continue;
+            }
+            HttpRequest request = request(base, operation, ids);
+            if (request == null) {
+                continue;
+            }
+            inFlight.incrementAndGet();
+            client.sendAsync(request, HttpResponse.BodyHandlers.ofString())
+                    .whenComplete((response, failure) -> {
+                        long latencyNanos = System.nanoTime() - due;
+                        boolean ok = failure == null && succeeded(operation, response, ids);
+                        if (measured) {
+                            if (ok) {
+                                report.record(operation, latencyNanos);
+                            } else {
+                                report.error(operation);
+                            }
+                        }
+                        inFlight.decrementAndGet();
+                    });
+        }
+        long drainUntil = System.nanoTime() + TimeUnit.SECONDS.toNanos(60);
+        while (inFlight.get() > 0 && System.nanoTime() < drainUntil) {
+            Thread.sleep(10);
+        }
+        report.seconds = DURATION_SECONDS;
+        return report;
+    }
+
+    private HttpRequest request(URI base, Operation operation, IdPool ids) {
+        switch (operation) {
+            case CREATE:
+                return json(HttpRequest.newBuilder(base), "POST", newStudent());
+            case GET: {
+                Long id = ids.random();
+                return id == null ? null : HttpRequest.newBuilder(base.resolve(id.toString())).build();
+            }
+            case UPDATE: {
+                Long id = ids.random();
+                return id == null ? null : json(HttpRequest.newBuilder(base.resolve(id.toString())), "PUT", newStudent());
+            }
+            case DELETE: {
+                Long id = ids.take();
+                return id == null ? null : HttpRequest.newBuilder(base.resolve(id.toString())).DELETE().build();
+            }
+            case LIST:
+                // a page rather than every student, so the cost stays flat as creates add rows
+                return HttpRequest.newBuilder(base.resolve("page?size=50")).build();
+            default:
+                throw new IllegalArgumentException("Unknown operation " + operation);
+        }
+    }
+
+    private HttpRequest json(HttpRequest.Builder builder, String method, Student student) {
+        try {
+            return builder
+                    .header("Content-Type", "application/json")
+                    .method(method, HttpRequest.BodyPublishers.ofByteArray(objectMapper.writeValueAsBytes(student)))
+                    .build();
+        } catch (Exception e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Gets and updates may race with a delete of the same student, so a 404
+     * is expected for them.
+     */
+    private boolean succeeded(Operation operation, HttpResponse<String> response, IdPool ids) {
+        int status = response.statusCode();
+        switch (operation) {
+            case CREATE:
+                if (status != 201) {
+                    return false;
+                }
+                try {
+                    ids.add(objectMapper.readTree(response.body()).get("id").asLong());
+                } catch (Exception e) {
+                    return false;
+                }
+                return true;
+            case GET:
+            case UPDATE:
+                return status == 200 || status == 404;
+            case DELETE:
+                return status == 204;
+            default:
+                return status == 200;
+        }
+    }
+
+    private Student newStudent() {
+        long n = emails.incrementAndGet();
+        return new Student("Student " + n, "student" + n + "@loadtest.com", Gender.values()[(int) (n % 3)]);
+    }
+
+    private static Map<Operation, Integer> parseMix(String mix) {
+        Map<Operation, Integer> weights = new EnumMap<>(Operation.class);
+        for (String entry : mix.split(",")) {
+            String[] parts = entry.trim().split("=");
+            weights.put(Operation.valueOf(parts[0].trim().toUpperCase()), Integer.parseInt(parts[1].trim()));
+        }
+        return weights;
+    }
+
+    /**
+     * One slot per unit of weight, so a uniform pick follows the mix.
+     */
+    private static Operation[] schedule(Map<Operation, Integer> weights) {
+        List<Operation> slots = new ArrayList<>();
+        weights.forEach((operation, weight) -> {
+            for (int i = 0; i < weight; i++) {
+                slots.add(operation);
+            }
+        });
+        if (slots.isEmpty()) {
+            throw new IllegalArgumentException("Empty loadtest.mix " + MIX);
+        }
+        return slots.toArray(new Operation[0]);
+    }
+
+    /**
+     * Ids of students believed to exist. Deletes take their id out first so
+     * two deletes never target the same student.
+     */
+    private static final class IdPool {
+        private final List<Long> ids = new ArrayList<>();
+
+        synchronized void add(long id) {
+            ids.add(id);
+        }
+
+        synchronized Long random() {
+            return ids.isEmpty() ? null : ids.get(ThreadLocalRandom.current().nextInt(ids.size()));
+        }
+
+        synchronized Long take() {
+            if (ids.isEmpty()) {
+                return null;
+            }
+            int i = ThreadLocalRandom.current().nextInt(ids.size());
+            Long id = ids.get(i);
+            ids.set(i, ids.get(ids.size() - 1));
+            ids.remove(ids.size() - 1);
+            return id;
+        }
+    }
+
+    private static final class Report {
+        final Histogram total = new ConcurrentHistogram(HIGHEST_LATENCY_MICROS, 3);
+        final Map<Operation, Histogram> latencies = new EnumMap<>(Operation.class);
+        final Map<Operation, LongAdder> errors = new EnumMap<>(Operation.class);
+        long seconds;
+
+        Report() {
+            for (Operation operation : Operation.values()) {
+                latencies.put(operation, new ConcurrentHistogram(HIGHEST_LATENCY_MICROS, 3));
+                errors.put(operation, new LongAdder());
+            }
+        }
+
+        void record(Operation operation, long latencyNanos) {
+            long micros = Math.min(TimeUnit.NANOSECONDS.toMicros(latencyNanos), HIGHEST_LATENCY_MICROS);
+            total.recordValue(micros);
+            latencies.get(operation).recordValue(micros);
+        }
+
+        void error(Operation operation) {
+            errors.get(operation).increment();
+        }
+
+        long errorCount() {
+            return errors.values().stream().mapToLong(LongAdder::sum).sum();
+        }
+
+        double throughput() {
+            return (double) total.getTotalCount() / seconds;
+        }
+
+        double errorRate() {
+            long requests = total.getTotalCount() + errorCount();
+            return requests == 0 ? 0 : (double) errorCount() / requests;
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder out = new StringBuilder(String.format(
+                    "%d req/s offered, %.1f req/s completed, %d errors (%.2f%%)%n",
+                    RATE, throughput(), errorCount(), errorRate() * 100));
+            out.append(String.format("%-8s %8s %7s %9s %9s %9s %9s %9s%n",
+                    "", "count", "errors", "p50 ms", "p90 ms", "p99 ms", "p99.9 ms", "max ms"));
+            for (Operation operation : Operation.values()) {
+                out.append(line(operation.name().toLowerCase(), latencies.get(operation),
+                        errors.get(operation).sum()));
+            }
+            out.append(line("total", total, errorCount()));
+            return out.toString();
+        }
+
+        private static String line(String name, Histogram histogram, long errors) {
+            return String.format("%-8s %8d %7d %9.1f %9.1f %9.1f %9.1f %9.1f%n",
+                    name, histogram.getTotalCount(), errors,
+                    histogram.getValueAtPercentile(50) / 1000.0,
+                    histogram.getValueAtPercentile(90) / 1000.0,
+                    histogram.getValueAtPercentile(99) / 1000.0,
+                    histogram.getValueAtPercentile(99.9) / 1000.0,
+                    histogram.getMaxValue() / 1000.0);
+        }
+    }
+}
@@ -0,0 +1,144 @@
+package com.example.demo.config;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A cap on concurrent requests that follows observed latency, after the
+ * gradient algorithm of Netflix's concurrency-limits.
+ *
+ * <p>A long-term average of response times stands for how fast requests are
+ * served without queueing. Each response time is compared to it: while they
+ * match, the limit grows by a few requests, letting throughput probe upwards;
+ * once responses slow down, because requests started to queue in Tomcat,
+ * Hikari or the database, the limit shrinks in proportion, down to half of
+ * it per sample. Growth stops while fewer than half the permits are used,
+ * as latency then says nothing about the limit. A failed request (a server
+ * error) cuts the limit by a tenth outright, as such failures often come
+ * fast and would otherwise read as good latency.
+ */
+public class AdaptiveConcurrencyLimit implements MeterBinder {
+
+    /**
+     * Weight of a new limit estimate; the rest is the previous limit.
+     */
+    private static final double SMOOTHING = 0.2;
+    /**
+     * Tolerated slowdown before the limit shrinks.
+     */
+    private static final double TOLERANCE = 1.5;
+    private static final double DROP_BACKOFF = 0.9;
+    private static final int LONG_WINDOW = 600;
+    private static final int WARMUP_SAMPLES = 10;
+
+    private final String budget;
+    private final int minLimit;
+    private final int maxLimit;
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final LongAdder rejected = new LongAdder();
+    private volatile double limit;
+
+    // guarded by this
+    private double longRtt;
+    private int samples;
+
+    public AdaptiveConcurrencyLimit(String budget, int initialLimit, int minLimit, int maxLimit) {
+        this.budget = budget;
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        this.limit = Math.max(minLimit, Math.min(maxLimit, initialLimit));
+    }
+
+    /**
+     * Takes a permit, to be handed back through one of the {@code on...}
+     * methods.
+     *
+     * @return the requests in flight including this one, or 0 when the limit
+     * is reached
+     */
+    public int tryAcquire() {
+        while (true) {
+            int current = inFlight.get();
+            if (current >= (int) limit) {
+                rejected.increment();
+                return 0;
+            }
+            if (inFlight.compareAndSet(current, current + 1)) {
+                return current + 1;
+            }
+        }
+    }
+
+    /**
+     * @param inFlightAtStart what {@link #tryAcquire()} returned
+     * @param rttNanos        how long the request took
+     */
+    public void onSuccess(int inFlightAtStart, long rttNanos) {
+        inFlight.decrementAndGet();
+        update(inFlightAtStart, Math.max(1, rttNanos));
+    }
+
+    public void onDropped() {
+        inFlight.decrementAndGet();
+        synchronized (this) {
+            limit = Math.max(minLimit, limit * DROP_BACKOFF);
+        }
+    }
+
+    /**
+     * For requests whose time says nothing about load, e.g. those that went
+     * asynchronous.
+     */
+    public void onIgnored() {
+        inFlight.decrementAndGet();
+    }
+
+    public int getLimit() {
+        return (int) limit;
+    }
+
+    public int getInFlight() {
+        return inFlight.get();
+    }
+
+    private synchronized void update(int inFlightAtStart, double shortRtt) {
+        if (samples < WARMUP_SAMPLES) {
+            samples++;
+            longRtt += (shortRtt - longRtt) / samples;
+            return;
+        }
+        longRtt += (shortRtt - longRtt) * 2 / (LONG_WINDOW + 1);
+        // recovering from a slow period: let the baseline catch up
+        if (longRtt / shortRtt > 2) {
+            longRtt *= 0.95;
+        }
+        if (inFlightAtStart < limit / 2) {
+            return;
+        }
+        double gradient = Math.max(0.5, Math.min(1.0, TOLERANCE * longRtt / shortRtt));
+        double queueSize = Math.sqrt(limit);
+        double estimate = limit * gradient + queueSize;
+        limit = Math.max(minLimit, Math.min(maxLimit, limit * (1 - SMOOTHING) + estimate * SMOOTHING));
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        Gauge.builder("student.concurrency.limit", this, AdaptiveConcurrencyLimit::getLimit)
+                .description("Concurrent requests currently allowed")
+                .tag("budget", budget)
+                .register(registry);
+        Gauge.builder("student.concurrency.in-flight", inFlight, AtomicInteger::get)
+                .description("Requests being served")
+                .tag("budget", budget)
+                .register(registry);
+        FunctionCounter.builder("student.concurrency.rejected", rejected, LongAdder::sum)
+                .description("Requests answered 503 because the limit was reached")
+                .tag("budget", budget)
+                .register(registry);
+    }
+}
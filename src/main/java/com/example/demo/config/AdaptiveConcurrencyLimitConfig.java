@@ -0,0 +1,56 @@
+package com.example.demo.config;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.boot.web.servlet.FilterRegistrationBean;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.Ordered;
+
+/**
+ * Opt-in, with {@code student.concurrency.enabled=true}, load shedding on
+ * the student endpoints: each of reads and writes gets a concurrency limit
+ * that adapts to observed latency, between
+ * {@code student.concurrency.<read|write>.min-limit} and
+ * {@code max-limit}, and requests beyond it are answered 503 right away,
+ * see {@link AdaptiveConcurrencyLimitFilter}.
+ */
+@Slf4j
+@Configuration
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.SERVLET)
+@ConditionalOnProperty(name = "student.concurrency.enabled", havingValue = "true")
+public class AdaptiveConcurrencyLimitConfig {
+
+    @Bean
+    public AdaptiveConcurrencyLimit readConcurrencyLimit(
+            @Value("${student.concurrency.read.initial-limit:50}") int initialLimit,
+            @Value("${student.concurrency.read.min-limit:10}") int minLimit,
+            @Value("${student.concurrency.read.max-limit:200}") int maxLimit) {
+        return new AdaptiveConcurrencyLimit("read", initialLimit, minLimit, maxLimit);
+    }
+
+    @Bean
+    public AdaptiveConcurrencyLimit writeConcurrencyLimit(
+            @Value("${student.concurrency.write.initial-limit:20}") int initialLimit,
+            @Value("${student.concurrency.write.min-limit:5}") int minLimit,
+            @Value("${student.concurrency.write.max-limit:100}") int maxLimit) {
+        return new AdaptiveConcurrencyLimit("write", initialLimit, minLimit, maxLimit);
+    }
+
+    @Bean
+    public FilterRegistrationBean<AdaptiveConcurrencyLimitFilter> adaptiveConcurrencyLimitFilter(
+            AdaptiveConcurrencyLimit readConcurrencyLimit,
+            AdaptiveConcurrencyLimit writeConcurrencyLimit,
+            @Value("${student.concurrency.retry-after-seconds:1}") long retryAfterSeconds) {
+        log.info("Limiting concurrent student requests, starting at {} reads and {} writes",
+                readConcurrencyLimit.getLimit(), writeConcurrencyLimit.getLimit());
+        FilterRegistrationBean<AdaptiveConcurrencyLimitFilter> registration = new FilterRegistrationBean<>(
+                new AdaptiveConcurrencyLimitFilter(readConcurrencyLimit, writeConcurrencyLimit, retryAfterSeconds));
+        registration.addUrlPatterns("/api/v1/students", "/api/v1/students/*");
+        // right after the character encoding filter, before any other work is done for the request
+        registration.setOrder(Ordered.HIGHEST_PRECEDENCE + 1);
+        return registration;
+    }
+}
@@ -0,0 +1,68 @@
+package com.example.demo.config;
+
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+
+/**
+ * Sheds requests beyond the current {@link AdaptiveConcurrencyLimit}, with
+ * 503 Service Unavailable and a {@code Retry-After} header, before they take
+ * a Tomcat thread's time or a database connection. Reads (GET, HEAD and
+ * OPTIONS) and writes have separate limits, so a burst of slow imports or
+ * updates does not starve reads, nor the other way round.
+ *
+ * <p>Requests that go asynchronous, e.g. the change stream, hand their permit
+ * back once the servlet thread is released and their time is not sampled.
+ */
+public class AdaptiveConcurrencyLimitFilter extends OncePerRequestFilter {
+
+    private final AdaptiveConcurrencyLimit readLimit;
+    private final AdaptiveConcurrencyLimit writeLimit;
+    private final String retryAfterSeconds;
+
+    public AdaptiveConcurrencyLimitFilter(AdaptiveConcurrencyLimit readLimit,
+                                          AdaptiveConcurrencyLimit writeLimit,
+                                          long retryAfterSeconds) {
+        this.readLimit = readLimit;
+        this.writeLimit = writeLimit;
+        this.retryAfterSeconds = Long.toString(retryAfterSeconds);
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response,
+                                    FilterChain chain) throws ServletException, IOException {
+        AdaptiveConcurrencyLimit limit = isRead(request) ? readLimit : writeLimit;
+        int inFlight = limit.tryAcquire();
+        if (inFlight == 0) {
+            response.setHeader(HttpHeaders.RETRY_AFTER, retryAfterSeconds);
+            response.sendError(HttpServletResponse.SC_SERVICE_UNAVAILABLE,
+                    "Too many concurrent student requests");
+            return;
+        }
+        long start = System.nanoTime();
+        boolean completed = false;
+        try {
+            chain.doFilter(request, response);
+            completed = true;
+        } finally {
+            if (!completed || response.getStatus() >= 500) {
+                limit.onDropped();
+            } else if (request.isAsyncStarted()) {
+                limit.onIgnored();
+            } else {
+                limit.onSuccess(inFlight, System.nanoTime() - start);
+            }
+        }
+    }
+
+    private static boolean isRead(HttpServletRequest request) {
+        HttpMethod method = HttpMethod.resolve(request.getMethod());
+        return method == HttpMethod.GET || method == HttpMethod.HEAD || method == HttpMethod.OPTIONS;
+    }
+}
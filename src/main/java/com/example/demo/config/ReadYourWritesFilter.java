@@ -0,0 +1,79 @@
+package com.example.demo.config;
+
+import org.springframework.http.HttpMethod;
+import org.springframework.web.filter.OncePerRequestFilter;
+import org.springframework.web.util.WebUtils;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.http.Cookie;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.time.Duration;
+
+/**
+ * Keeps a client on the primary for a while after it wrote, so it reads its
+ * own writes even while the replicas lag behind. A request that may write
+ * (anything but GET, HEAD and OPTIONS) runs against the primary only and
+ * leaves a cookie holding the time of the write; later requests carrying a
+ * cookie younger than the window run against the primary as well. Clients
+ * that drop cookies read from the replicas right away.
+ */
+public class ReadYourWritesFilter extends OncePerRequestFilter {
+
+    static final String COOKIE_NAME = "student-last-write";
+
+    private final Duration window;
+
+    public ReadYourWritesFilter(Duration window) {
+        this.window = window;
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response,
+                                    FilterChain chain) throws ServletException, IOException {
+        boolean write = isWrite(request);
+        if (write) {
+            // set up front, the response may be committed by the time the chain returns
+            response.addCookie(lastWriteCookie());
+        }
+        if (!write && !wroteRecently(request)) {
+            chain.doFilter(request, response);
+            return;
+        }
+        ReplicaRoutingDataSource.setPrimaryOnly();
+        try {
+            chain.doFilter(request, response);
+        } finally {
+            ReplicaRoutingDataSource.clearPrimaryOnly();
+        }
+    }
+
+    private static boolean isWrite(HttpServletRequest request) {
+        HttpMethod method = HttpMethod.resolve(request.getMethod());
+        return method != HttpMethod.GET && method != HttpMethod.HEAD && method != HttpMethod.OPTIONS;
+    }
+
+    private boolean wroteRecently(HttpServletRequest request) {
+        Cookie cookie = WebUtils.getCookie(request, COOKIE_NAME);
+        if (cookie == null) {
+            return false;
+        }
+        try {
+            long writtenAt = Long.parseLong(cookie.getValue());
+            return System.currentTimeMillis() - writtenAt < window.toMillis();
+        } catch (NumberFormatException e) {
+            return false;
+        }
+    }
+
+    private Cookie lastWriteCookie() {
+        Cookie cookie = new Cookie(COOKIE_NAME, Long.toString(System.currentTimeMillis()));
+        cookie.setPath("/");
+        cookie.setHttpOnly(true);
+        // whole seconds, rounded up so the cookie outlives the window
+        cookie.setMaxAge((int) Math.max(1, (window.toMillis() + 999) / 1000));
+        return cookie;
+    }
+}
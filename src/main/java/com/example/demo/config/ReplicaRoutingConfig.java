@@ -0,0 +1,74 @@
+package com.example.demo.config;
+
+import com.zaxxer.hikari.HikariConfig;
+import com.zaxxer.hikari.HikariDataSource;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.boot.context.properties.bind.Bindable;
+import org.springframework.boot.context.properties.bind.Binder;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Profile;
+import org.springframework.core.env.Environment;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Opt-in, with {@code student.datasource.routing.enabled=true}, offloading
+ * of read-only transactions to the replicas listed in
+ * {@code student.datasource.replica-urls}. The primary pool is built from the
+ * usual spring.datasource properties; each replica pool copies its settings
+ * and credentials, with its own URL and a short connection timeout after
+ * which a read falls back to the primary.
+ *
+ * <p>Replicas lag behind the primary, so a client that wrote is kept on the
+ * primary for {@code student.datasource.read-your-writes-window}, see
+ * {@link ReadYourWritesFilter}.
+ */
+@Slf4j
+@Configuration
+@Profile("!reactive")
+@ConditionalOnProperty(name = "student.datasource.routing.enabled", havingValue = "true")
+@EnableConfigurationProperties(DataSourceProperties.class)
+public class ReplicaRoutingConfig {
+
+    @Bean
+    public ReplicaRoutingDataSource dataSource(
+            DataSourceProperties properties,
+            Environment environment,
+            @Value("${student.datasource.replica-urls}") List<String> replicaUrls,
+            @Value("${student.datasource.replica-connection-timeout-ms:1000}") long replicaConnectionTimeoutMs) {
+        HikariDataSource primary = properties.initializeDataSourceBuilder()
+                .type(HikariDataSource.class)
+                .build();
+        Binder.get(environment).bind("spring.datasource.hikari", Bindable.ofInstance(primary));
+        if (primary.getPoolName() == null) {
+            primary.setPoolName("primary");
+        }
+
+        List<HikariDataSource> replicas = new ArrayList<>();
+        for (String url : replicaUrls) {
+            HikariConfig config = new HikariConfig();
+            primary.copyStateTo(config);
+            config.setJdbcUrl(url.trim());
+            config.setPoolName("replica-" + (replicas.size() + 1));
+            // a replica that is down must not stop startup nor hold reads up for long
+            config.setInitializationFailTimeout(-1);
+            config.setConnectionTimeout(replicaConnectionTimeoutMs);
+            replicas.add(new HikariDataSource(config));
+        }
+        log.info("Routing read-only transactions to {} replicas", replicas.size());
+        return new ReplicaRoutingDataSource(primary, replicas);
+    }
+
+    @Bean
+    public ReadYourWritesFilter readYourWritesFilter(
+            @Value("${student.datasource.read-your-writes-window:5s}") Duration window) {
+        return new ReadYourWritesFilter(window);
+    }
+}
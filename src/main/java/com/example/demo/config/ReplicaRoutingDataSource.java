@@ -0,0 +1,171 @@
+package com.example.demo.config;
+
+import com.zaxxer.hikari.HikariDataSource;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.datasource.AbstractDataSource;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.io.Closeable;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+
+/**
+ * Hands out connections to the primary, or for read-only transactions to a
+ * healthy replica picked round-robin. A replica that fails to give a
+ * connection is taken out of rotation and the read falls back to the
+ * primary; {@link #checkReplicas()} puts it back once it answers again.
+ *
+ * <p>Connections are fetched lazily, on the first statement rather than
+ * when the transaction begins, by which point the transaction is known to
+ * be read-only or not.
+ */
+@Slf4j
+public class ReplicaRoutingDataSource extends LazyConnectionDataSourceProxy implements Closeable {
+
+    private static final ThreadLocal<Boolean> PRIMARY_ONLY = new ThreadLocal<>();
+    private static final int VALIDATION_TIMEOUT_SECONDS = 1;
+
+    private final HikariDataSource primary;
+    private final List<Replica> replicas;
+    private final AtomicInteger next = new AtomicInteger();
+
+    public ReplicaRoutingDataSource(HikariDataSource primary, List<HikariDataSource> replicas) {
+        this.primary = primary;
+        this.replicas = replicas.stream()
+                .map(Replica::new)
+                .collect(Collectors.toList());
+        setTargetDataSource(new Router());
+        afterPropertiesSet();
+    }
+
+    /**
+     * Sends every query of the current thread to the primary, until
+     * {@link #clearPrimaryOnly()}, e.g. for a client that just wrote.
+     */
+    public static void setPrimaryOnly() {
+        PRIMARY_ONLY.set(Boolean.TRUE);
+    }
+
+    public static void clearPrimaryOnly() {
+        PRIMARY_ONLY.remove();
+    }
+
+    public static boolean isPrimaryOnly() {
+        return PRIMARY_ONLY.get() != null;
+    }
+
+    /**
+     * Runs {@code action} with every query of the current thread sent to the
+     * primary, then restores the routing it had. For reads that fill state
+     * shared across clients, which must not lag behind any client's writes.
+     */
+    public static <T> T onPrimary(Supplier<T> action) {
+        Boolean previous = PRIMARY_ONLY.get();
+        PRIMARY_ONLY.set(Boolean.TRUE);
+        try {
+            return action.get();
+        } finally {
+            if (previous == null) {
+                PRIMARY_ONLY.remove();
+            }
+        }
+    }
+
+    private Connection route() throws SQLException {
+        if (replicas.isEmpty()
+                || !TransactionSynchronizationManager.isCurrentTransactionReadOnly()
+                || PRIMARY_ONLY.get() != null) {
+            return primary.getConnection();
+        }
+        int size = replicas.size();
+        int start = Math.floorMod(next.getAndIncrement(), size);
+        for (int i = 0; i < size; i++) {
+            Replica replica = replicas.get((start + i) % size);
+            if (!replica.healthy) {
+                continue;
+            }
+            try {
+                return replica.pool.getConnection();
+            } catch (SQLException e) {
+                replica.markDown(e);
+            }
+        }
+        return primary.getConnection();
+    }
+
+    @Scheduled(fixedDelayString = "${student.datasource.replica-check-interval-ms:5000}")
+    public void checkReplicas() {
+        for (Replica replica : replicas) {
+            try (Connection connection = replica.pool.getConnection()) {
+                if (connection.isValid(VALIDATION_TIMEOUT_SECONDS)) {
+                    replica.markUp();
+                } else {
+                    // recently used connections skip Hikari's own validation
+                    replica.pool.evictConnection(connection);
+                    replica.markDown(null);
+                }
+            } catch (SQLException e) {
+                replica.markDown(e);
+            }
+        }
+    }
+
+    /**
+     * Names of the replica pools currently taking reads.
+     */
+    public List<String> getHealthyReplicas() {
+        return replicas.stream()
+                .filter(replica -> replica.healthy)
+                .map(replica -> replica.pool.getPoolName())
+                .collect(Collectors.toList());
+    }
+
+    @Override
+    public void close() {
+        replicas.forEach(replica -> replica.pool.close());
+        primary.close();
+    }
+
+    private final class Router extends AbstractDataSource {
+
+        @Override
+        public Connection getConnection() throws SQLException {
+            return route();
+        }
+
+        @Override
+        public Connection getConnection(String username, String password) throws SQLException {
+            throw new SQLFeatureNotSupportedException("Credentials are set per pool");
+        }
+    }
+
+    private static final class Replica {
+        private final HikariDataSource pool;
+        private volatile boolean healthy = true;
+
+        Replica(HikariDataSource pool) {
+            this.pool = pool;
+        }
+
+        void markUp() {
+            if (!healthy) {
+                log.info("Replica {} is back, routing reads to it", pool.getPoolName());
+                healthy = true;
+            }
+        }
+
+        void markDown(SQLException cause) {
+            if (healthy) {
+                log.warn("Replica {} is down, routing its reads to the primary", pool.getPoolName(), cause);
+                healthy = false;
+            }
+        }
+    }
+}
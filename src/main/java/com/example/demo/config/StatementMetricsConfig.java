@@ -0,0 +1,60 @@
+package com.example.demo.config;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.hibernate.cfg.AvailableSettings;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.boot.autoconfigure.orm.jpa.HibernatePropertiesCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.web.servlet.HandlerInterceptor;
+import org.springframework.web.servlet.HandlerMapping;
+import org.springframework.web.servlet.config.annotation.InterceptorRegistry;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+/**
+ * Records how many SQL statements each request issued as the
+ * student.request.statements distribution, tagged like http.server.requests.
+ * Statements issued after a request went asynchronous (streamed responses)
+ * are not attributed to it.
+ */
+@Configuration
+public class StatementMetricsConfig implements WebMvcConfigurer {
+
+    private final StatementCounter statementCounter = new StatementCounter();
+    private final ObjectProvider<MeterRegistry> meterRegistry;
+
+    public StatementMetricsConfig(ObjectProvider<MeterRegistry> meterRegistry) {
+        this.meterRegistry = meterRegistry;
+    }
+
+    @Bean
+    public HibernatePropertiesCustomizer statementCounterCustomizer() {
+        return properties -> properties.put(AvailableSettings.STATEMENT_INSPECTOR, statementCounter);
+    }
+
+    @Override
+    public void addInterceptors(InterceptorRegistry registry) {
+        registry.addInterceptor(new HandlerInterceptor() {
+            @Override
+            public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) {
+                statementCounter.reset();
+                return true;
+            }
+
+            @Override
+            public void afterCompletion(HttpServletRequest request, HttpServletResponse response,
+                                        Object handler, Exception ex) {
+                Object uri = request.getAttribute(HandlerMapping.BEST_MATCHING_PATTERN_ATTRIBUTE);
+                meterRegistry.ifAvailable(registry -> DistributionSummary.builder("student.request.statements")
+                        .tag("method", request.getMethod())
+                        .tag("uri", uri == null ? "UNKNOWN" : uri.toString())
+                        .register(registry)
+                        .record(statementCounter.count()));
+            }
+        }).addPathPatterns("/api/**");
+    }
+}
@@ -0,0 +1,104 @@
+package com.example.demo.config;
+
+import com.example.demo.student.exception.ServiceUnavailableException;
+import com.zaxxer.hikari.HikariDataSource;
+import lombok.extern.slf4j.Slf4j;
+import org.aspectj.lang.ProceedingJoinPoint;
+import org.aspectj.lang.annotation.Around;
+import org.aspectj.lang.annotation.Aspect;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.web.embedded.tomcat.TomcatProtocolHandlerCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.annotation.Order;
+import org.springframework.core.task.support.TaskExecutorAdapter;
+import org.springframework.web.servlet.config.annotation.AsyncSupportConfigurer;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+
+import javax.annotation.PreDestroy;
+import javax.sql.DataSource;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Opt-in execution mode, enabled with {@code student.execution.mode=virtual},
+ * that handles every Tomcat request and async response on its own virtual
+ * thread instead of the bounded platform thread pool.
+ *
+ * <p>Without the thread pool there is no longer a cap on how many requests
+ * reach the database at once, so calls into the student service share a
+ * semaphore with one permit per pooled connection. Callers wait at most
+ * {@code student.execution.db-acquire-timeout-ms} for a permit and are
+ * answered 503 otherwise, rather than queueing inside Hikari.
+ */
+@Slf4j
+@Configuration
+@ConditionalOnProperty(name = "student.execution.mode", havingValue = "virtual")
+public class VirtualThreadConfig implements WebMvcConfigurer {
+
+    private final ExecutorService executor = VirtualThreads.newVirtualThreadPerTaskExecutor();
+
+    @Bean
+    public TomcatProtocolHandlerCustomizer<?> virtualThreadProtocolHandlerCustomizer() {
+        log.info("Handling requests on virtual threads");
+        return protocolHandler -> protocolHandler.setExecutor(executor);
+    }
+
+    @Override
+    public void configureAsyncSupport(AsyncSupportConfigurer configurer) {
+        configurer.setTaskExecutor(new TaskExecutorAdapter(executor));
+    }
+
+    @Bean
+    public DatabaseConcurrencyLimit databaseConcurrencyLimit(
+            DataSource dataSource,
+            @Value("${student.execution.db-permits:0}") int permits,
+            @Value("${student.execution.db-acquire-timeout-ms:1000}") long acquireTimeoutMs) {
+        if (permits <= 0) {
+            permits = dataSource instanceof HikariDataSource
+                    ? ((HikariDataSource) dataSource).getMaximumPoolSize()
+                    : 10;
+        }
+        return new DatabaseConcurrencyLimit(permits, acquireTimeoutMs);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdown();
+    }
+
+    @Aspect
+    @Order(0)
+    public static class DatabaseConcurrencyLimit {
+
+        private static final ThreadLocal<Boolean> HOLDING = new ThreadLocal<>();
+
+        private final Semaphore permits;
+        private final long acquireTimeoutMs;
+
+        public DatabaseConcurrencyLimit(int permits, long acquireTimeoutMs) {
+            this.permits = new Semaphore(permits, true);
+            this.acquireTimeoutMs = acquireTimeoutMs;
+        }
+
+        @Around("execution(public * com.example.demo.student.StudentService.*(..))")
+        public Object limit(ProceedingJoinPoint joinPoint) throws Throwable {
+            if (HOLDING.get() != null) {
+                // nested call on a thread that already holds a permit
+                return joinPoint.proceed();
+            }
+            if (!permits.tryAcquire(acquireTimeoutMs, TimeUnit.MILLISECONDS)) {
+                throw new ServiceUnavailableException("Too many concurrent database calls");
+            }
+            HOLDING.set(Boolean.TRUE);
+            try {
+                return joinPoint.proceed();
+            } finally {
+                HOLDING.remove();
+                permits.release();
+            }
+        }
+    }
+}
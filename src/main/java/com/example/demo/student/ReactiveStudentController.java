@@ -0,0 +1,88 @@
+package com.example.demo.student;
+
+import lombok.AllArgsConstructor;
+import org.springframework.context.annotation.Profile;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import javax.validation.Valid;
+
+/**
+ * WebFlux version of {@link StudentController}, active with the reactive
+ * profile and serving the same {@code api/v1/students} contract.
+ */
+@Profile("reactive")
+@RestController
+@RequestMapping(path = "api/v1/students")
+@AllArgsConstructor
+public class ReactiveStudentController {
+
+    private final ReactiveStudentService studentService;
+
+    /**
+     * Writes students as they are read, as a JSON array or, when the client
+     * accepts it, as newline-delimited JSON.
+     */
+    @GetMapping(produces = {MediaType.APPLICATION_JSON_VALUE, MediaType.APPLICATION_NDJSON_VALUE})
+    public Flux<Student> getAllStudents() {
+        return studentService.getAllStudents();
+    }
+
+    @GetMapping(path = "page")
+    public Mono<StudentPage> getStudentPage(
+            @RequestParam(required = false) String cursor,
+            @RequestParam(defaultValue = "" + StudentService.DEFAULT_PAGE_SIZE) int size,
+            @RequestParam(required = false) Gender gender) {
+        return studentService.getStudentPage(cursor, size, gender);
+    }
+
+    @GetMapping(path = "export", produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public Flux<Student> exportStudents() {
+        return studentService.getAllStudents();
+    }
+
+    @PostMapping
+    public Mono<ResponseEntity<Student>> addStudent(@Valid @RequestBody Student student) {
+        return studentService.addStudent(student)
+                .map(savedStudent -> ResponseEntity.status(HttpStatus.CREATED)
+                        .eTag(StudentETag.format(savedStudent.getVersion()))
+                        .body(savedStudent));
+    }
+
+    @DeleteMapping(path = "{studentId}")
+    public Mono<ResponseEntity<Void>> deleteStudent(
+            @PathVariable("studentId") Long studentId,
+            @RequestHeader(value = HttpHeaders.IF_MATCH, required = false) String ifMatch) {
+        return studentService.deleteStudent(studentId, StudentETag.parseIfMatch(ifMatch))
+                .then(Mono.just(ResponseEntity.noContent().build()));
+    }
+
+    @GetMapping("/{id}")
+    public Mono<ResponseEntity<Student>> getStudentById(@PathVariable Long id) {
+        return studentService.getStudentById(id)
+                .map(student -> ResponseEntity.ok()
+                        .eTag(StudentETag.format(student.getVersion()))
+                        .body(student))
+                .defaultIfEmpty(ResponseEntity.notFound().build());
+    }
+
+    @PutMapping("/{id}")
+    public Mono<ResponseEntity<Student>> updateStudentById(
+            @PathVariable Long id,
+            @RequestHeader(value = HttpHeaders.IF_MATCH, required = false) String ifMatch,
+            @Valid @RequestBody Student student) {
+        return studentService.saveEditStudent(student, id, StudentETag.parseIfMatch(ifMatch))
+                .map(updatedStudent -> {
+                    ResponseEntity.BodyBuilder response = ResponseEntity.ok();
+                    if (updatedStudent.getVersion() != null) {
+                        response.eTag(StudentETag.format(updatedStudent.getVersion()));
+                    }
+                    return response.body(updatedStudent);
+                });
+    }
+}
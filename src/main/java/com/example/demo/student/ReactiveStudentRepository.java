@@ -0,0 +1,184 @@
+package com.example.demo.student;
+
+import lombok.AllArgsConstructor;
+import org.springframework.context.annotation.Profile;
+import org.springframework.data.r2dbc.core.R2dbcEntityTemplate;
+import org.springframework.r2dbc.core.DatabaseClient;
+import org.springframework.stereotype.Repository;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+/**
+ * R2DBC counterpart of {@link StudentRepository}, used by the reactive
+ * profile. Statements are plain SQL against the schema Hibernate maintains.
+ *
+ * <p>This is a class rather than a Spring Data repository interface because
+ * {@link Student} is a JPA entity, and Spring Data would hand any repository
+ * for it to JPA.
+ */
+@Profile("reactive")
+@Repository
+@AllArgsConstructor
+public class ReactiveStudentRepository {
+
+    private final R2dbcEntityTemplate template;
+
+    public Flux<Student> selectAll() {
+        return select("" +
+                "SELECT * FROM student " +
+                "ORDER BY id")
+                .all();
+    }
+
+    public Flux<Student> selectPageAfter(Long afterId, int limit) {
+        return select("" +
+                "SELECT * FROM student " +
+                "WHERE id > :afterId " +
+                "ORDER BY id " +
+                "LIMIT :limit")
+                .bind("afterId", afterId)
+                .bind("limit", limit)
+                .all();
+    }
+
+    public Flux<Student> selectPageAfterByGender(Long afterId, Gender gender, int limit) {
+        return select("" +
+                "SELECT * FROM student " +
+                "WHERE gender = :gender and id > :afterId " +
+                "ORDER BY id " +
+                "LIMIT :limit")
+                .bind("afterId", afterId)
+                .bind("gender", gender.name())
+                .bind("limit", limit)
+                .all();
+    }
+
+    public Mono<Student> findById(Long id) {
+        return select("" +
+                "SELECT * FROM student " +
+                "WHERE id = :id")
+                .bind("id", id)
+                .one();
+    }
+
+    public Mono<Boolean> existsById(Long id) {
+        return exists("" +
+                "SELECT COUNT(*) FROM student " +
+                "WHERE id = :id", id, null);
+    }
+
+    public Mono<Boolean> selectExistsEmail(String email) {
+        return exists("" +
+                "SELECT COUNT(*) FROM student " +
+                "WHERE email = :email", null, email);
+    }
+
+    public Mono<Boolean> selectConflictEmail(String email, Long id) {
+        return exists("" +
+                "SELECT COUNT(*) FROM student " +
+                "WHERE email = :email and id != :id", id, email);
+    }
+
+    /**
+     * Inserts a student that already has its id and version.
+     */
+    public Mono<Student> insert(Student student) {
+        return bindStudent("" +
+                "INSERT INTO student (id, name, email, email_domain, gender, version) " +
+                "VALUES (:id, :name, :email, :emailDomain, :gender, :version)",
+                student.getId(), student.getName(), student.getEmail(), student.getGender())
+                .bind("version", student.getVersion())
+                .fetch().rowsUpdated()
+                .thenReturn(student);
+    }
+
+    public Mono<Integer> updateStudent(Long id, String name, String email, Gender gender) {
+        return bindStudent("" +
+                "UPDATE student " +
+                "SET name = :name, email = :email, email_domain = :emailDomain, gender = :gender, " +
+                "version = COALESCE(version, 0) + 1 " +
+                "WHERE id = :id", id, name, email, gender)
+                .fetch().rowsUpdated();
+    }
+
+    public Mono<Integer> updateStudentIfVersion(Long id, String name, String email, Gender gender, Long version) {
+        return bindStudent("" +
+                "UPDATE student " +
+                "SET name = :name, email = :email, email_domain = :emailDomain, gender = :gender, " +
+                "version = COALESCE(version, 0) + 1 " +
+                "WHERE id = :id and COALESCE(version, 0) = :version", id, name, email, gender)
+                .bind("version", version)
+                .fetch().rowsUpdated();
+    }
+
+    public Mono<Integer> deleteStudentById(Long id) {
+        return sql("" +
+                "DELETE FROM student " +
+                "WHERE id = :id")
+                .bind("id", id)
+                .fetch().rowsUpdated();
+    }
+
+    public Mono<Integer> deleteStudentByIdIfVersion(Long id, Long version) {
+        return sql("" +
+                "DELETE FROM student " +
+                "WHERE id = :id and COALESCE(version, 0) = :version")
+                .bind("id", id)
+                .bind("version", version)
+                .fetch().rowsUpdated();
+    }
+
+    private DatabaseClient.GenericExecuteSpec sql(String sql) {
+        return template.getDatabaseClient().sql(sql);
+    }
+
+    private StudentRows select(String sql) {
+        return new StudentRows(sql(sql));
+    }
+
+    private Mono<Boolean> exists(String sql, Long id, String email) {
+        DatabaseClient.GenericExecuteSpec spec = sql(sql);
+        if (id != null) {
+            spec = spec.bind("id", id);
+        }
+        if (email != null) {
+            spec = spec.bind("email", email);
+        }
+        return spec.map(row -> row.get(0, Long.class) > 0).one();
+    }
+
+    private DatabaseClient.GenericExecuteSpec bindStudent(
+            String sql, Long id, String name, String email, Gender gender) {
+        return sql(sql)
+                .bind("id", id)
+                .bind("name", name)
+                .bind("email", email)
+                .bind("emailDomain", Student.emailDomainOf(email))
+                .bind("gender", gender.name());
+    }
+
+    /**
+     * Binds parameters, then maps rows to students with the R2DBC mapping.
+     */
+    private class StudentRows {
+
+        private DatabaseClient.GenericExecuteSpec spec;
+
+        StudentRows(DatabaseClient.GenericExecuteSpec spec) {
+            this.spec = spec;
+        }
+
+        StudentRows bind(String name, Object value) {
+            spec = spec.bind(name, value);
+            return this;
+        }
+
+        Flux<Student> all() {
+            return spec.map((row, metadata) -> template.getConverter().read(Student.class, row, metadata)).all();
+        }
+
+        Mono<Student> one() {
+            return spec.map((row, metadata) -> template.getConverter().read(Student.class, row, metadata)).one();
+        }
+    }
+}
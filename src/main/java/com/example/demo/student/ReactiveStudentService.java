@@ -0,0 +1,182 @@
+package com.example.demo.student;
+
+import com.example.demo.student.exception.BadRequestException;
+import com.example.demo.student.exception.PreconditionFailedException;
+import com.example.demo.student.exception.StudentNotFoundException;
+import io.r2dbc.spi.Connection;
+import lombok.AllArgsConstructor;
+import org.jetbrains.annotations.NotNull;
+import org.springframework.context.annotation.Profile;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.r2dbc.core.DatabaseClient;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+/**
+ * Non-blocking counterpart of {@link StudentService} with the same rules and
+ * exceptions, delivered through {@link Mono} and {@link Flux}. Reads are not
+ * cached and there is no email filter: every check goes to the database.
+ */
+@AllArgsConstructor
+@Profile("reactive")
+@Service
+public class ReactiveStudentService {
+
+    /**
+     * Matches the allocation size of the student sequence, so ids taken here
+     * never overlap the blocks Hibernate hands out.
+     */
+    static final int ID_ALLOCATION_SIZE = 50;
+
+    private final ReactiveStudentRepository studentRepository;
+    private final DatabaseClient databaseClient;
+
+    /**
+     * Streams students in id order, fetching rows as the subscriber requests
+     * them.
+     */
+    public Flux<Student> getAllStudents() {
+        return studentRepository.selectAll();
+    }
+
+    public Mono<StudentPage> getStudentPage(String cursor, int size, Gender gender) {
+        if (size < 1) {
+            return Mono.error(new BadRequestException("Page size must be positive"));
+        }
+        int pageSize = Math.min(size, StudentService.MAX_PAGE_SIZE);
+        long afterId;
+        try {
+            afterId = StudentCursor.decode(cursor);
+        } catch (BadRequestException e) {
+            return Mono.error(e);
+        }
+
+        // fetch one extra row to know whether there is a next page
+        Flux<Student> students = gender == null
+                ? studentRepository.selectPageAfter(afterId, pageSize + 1)
+                : studentRepository.selectPageAfterByGender(afterId, gender, pageSize + 1);
+        return students.collectList().map(page -> {
+            if (page.size() <= pageSize) {
+                return new StudentPage(page, null);
+            }
+            page.remove(pageSize);
+            return new StudentPage(page, StudentCursor.encode(page.get(pageSize - 1).getId()));
+        });
+    }
+
+    public Mono<Student> getStudentById(Long id) {
+        return studentRepository.findById(id);
+    }
+
+    /**
+     * Inserts the student and lets the unique constraint on the email column
+     * decide conflicts, as {@link StudentService#addStudent(Student)} does.
+     */
+    public Mono<Student> addStudent(@NotNull Student student) {
+        return nextId()
+                .flatMap(id -> {
+                    student.setId(id);
+                    student.setVersion(0L);
+                    return studentRepository.insert(student);
+                })
+                .onErrorResume(DataIntegrityViolationException.class, e ->
+                        studentRepository.selectExistsEmail(student.getEmail())
+                                .flatMap(taken -> Mono.error(taken
+                                        ? new BadRequestException("Email " + student.getEmail() + " taken")
+                                        : e)));
+    }
+
+    /**
+     * @param expectedVersion version the student must still have, or
+     *                        {@code null} to update whatever the version
+     * @see StudentService#saveEditStudent(Student, Long, Long)
+     */
+    public Mono<Student> saveEditStudent(@NotNull Student student, Long studentId, Long expectedVersion) {
+        return studentRepository.selectConflictEmail(student.getEmail(), studentId)
+                .flatMap(conflict -> conflict
+                        ? Mono.error(emailConflict(student))
+                        : expectedVersion == null
+                        ? studentRepository.updateStudent(
+                                studentId, student.getName(), student.getEmail(), student.getGender())
+                        : studentRepository.updateStudentIfVersion(
+                                studentId, student.getName(), student.getEmail(), student.getGender(),
+                                expectedVersion))
+                .onErrorResume(DataIntegrityViolationException.class, e ->
+                        // the email was taken after the check above
+                        studentRepository.selectConflictEmail(student.getEmail(), studentId)
+                                .flatMap(conflict -> Mono.error(conflict ? emailConflict(student) : e)))
+                .flatMap(updated -> {
+                    if (updated == 0) {
+                        return notFoundOrModified(studentId, expectedVersion);
+                    }
+                    student.setId(studentId);
+                    student.setVersion(expectedVersion == null ? null : expectedVersion + 1);
+                    return Mono.just(student);
+                });
+    }
+
+    /**
+     * @param expectedVersion version the student must still have, or
+     *                        {@code null} to delete whatever the version
+     */
+    public Mono<Void> deleteStudent(Long studentId, Long expectedVersion) {
+        Mono<Integer> deleted = expectedVersion == null
+                ? studentRepository.deleteStudentById(studentId)
+                : studentRepository.deleteStudentByIdIfVersion(studentId, expectedVersion);
+        return deleted.flatMap(count -> count == 0
+                ? notFoundOrModified(studentId, expectedVersion)
+                : Mono.empty());
+    }
+
+    private <T> Mono<T> notFoundOrModified(Long studentId, Long expectedVersion) {
+        if (expectedVersion == null) {
+            return Mono.error(notFound(studentId));
+        }
+        return studentRepository.existsById(studentId)
+                .flatMap(exists -> Mono.error(exists
+                        ? new PreconditionFailedException(
+                                "Student with id " + studentId + " is not at version " + expectedVersion)
+                        : notFound(studentId)));
+    }
+
+    /**
+     * Takes the next value of the sequence Hibernate uses for students. On
+     * MySQL Hibernate emulates the sequence with a table, which is advanced
+     * with LAST_INSERT_ID so the new value can be read back on the same
+     * connection without a transaction.
+     */
+    private Mono<Long> nextId() {
+        String database = databaseClient.getConnectionFactory().getMetadata().getName();
+        if (database.contains("MySQL")) {
+            return databaseClient.inConnection(connection -> Mono
+                    .from(connection.createStatement("" +
+                            "UPDATE student_sequence " +
+                            "SET next_val = LAST_INSERT_ID(next_val + " + ID_ALLOCATION_SIZE + ")")
+                            .execute())
+                    .flatMap(result -> Mono.from(result.getRowsUpdated()))
+                    .then(selectLong(connection, "SELECT LAST_INSERT_ID() - " + ID_ALLOCATION_SIZE)));
+        }
+        String sql = database.contains("PostgreSQL")
+                ? "SELECT nextval('student_sequence')"
+                : "SELECT NEXT VALUE FOR student_sequence";
+        return databaseClient.sql(sql)
+                .map(row -> row.get(0, Long.class))
+                .one();
+    }
+
+    private static Mono<Long> selectLong(Connection connection, String sql) {
+        return Mono.from(connection.createStatement(sql).execute())
+                .flatMap(result -> Mono.from(result.map((row, metadata) -> row.get(0, Long.class))));
+    }
+
+    private static BadRequestException emailConflict(Student student) {
+        return new BadRequestException(
+                "Email " + student.getEmail() + " conflict");
+    }
+
+    private static StudentNotFoundException notFound(Long studentId) {
+        return new StudentNotFoundException(
+                "Student with id " + studentId + " does not exists");
+    }
+}
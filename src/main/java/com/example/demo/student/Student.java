@@ -1,11 +1,13 @@
 package com.example.demo.student;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import lombok.*;
 
 import javax.persistence.*;
 import javax.validation.constraints.Email;
 import javax.validation.constraints.NotBlank;
 import javax.validation.constraints.NotNull;
+import java.util.Locale;
 
 @ToString
 @Getter
@@ -14,13 +16,21 @@ import javax.validation.constraints.NotNull;
 @NoArgsConstructor
 @AllArgsConstructor
 @Entity
-@Table
+@Table(indexes = {
+        @Index(name = "student_gender_id_idx", columnList = "gender, id"),
+        @Index(name = "student_name_idx", columnList = "name"),
+        @Index(name = "student_email_domain_id_idx", columnList = "email_domain, id")
+})
 public class Student {
+    /**
+     * The Spring Data id maps the same class for R2DBC in the reactive profile.
+     */
     @Id
+    @org.springframework.data.annotation.Id
     @SequenceGenerator(
             name = "student_sequence",
             sequenceName = "student_sequence",
-            allocationSize = 1
+            allocationSize = 50
     )
     @GeneratedValue(
             generator = "student_sequence",
@@ -29,6 +39,7 @@ public class Student {
     @NotBlank
     @Column(nullable = false)
     private String name;
+    @NotBlank
     @Email
     @Column(nullable = false, unique = true)
     private String email;
@@ -36,6 +47,12 @@ public class Student {
     @Enumerated(EnumType.STRING)
     @Column(nullable = false)
     private Gender gender;
+    /**
+     * Exposed to clients as the ETag rather than in the body.
+     */
+    @JsonIgnore
+    @Version
+    private Long version;
 
     public Student(String name, String email, Gender gender) {
         this.name = name;
@@ -43,5 +60,27 @@ public class Student {
         this.gender = gender;
     }
 
+    /**
+     * Lowercased domain of the email, stored so that searches by domain can
+     * use an index. It is always derived from the email, never set.
+     */
+    @JsonIgnore
+    @Access(AccessType.PROPERTY)
+    @Column(name = "email_domain")
+    public String getEmailDomain() {
+        return emailDomainOf(email);
+    }
+
+    protected void setEmailDomain(String emailDomain) {
+        // derived from the email
+    }
+
+    public static String emailDomainOf(String email) {
+        if (email == null || email.indexOf('@') < 0) {
+            return null;
+        }
+        return email.substring(email.indexOf('@') + 1).toLowerCase(Locale.ROOT);
+    }
+
 
 }
@@ -0,0 +1,40 @@
+package com.example.demo.student;
+
+import lombok.AllArgsConstructor;
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+import lombok.ToString;
+
+/**
+ * Outcome of one item of a batch create, reported at the same index as the
+ * student it refers to.
+ */
+@ToString
+@Getter
+@EqualsAndHashCode
+@AllArgsConstructor
+public class StudentBatchResult {
+
+    public enum Status {
+        CREATED,
+        INVALID,
+        EMAIL_TAKEN
+    }
+
+    private final int index;
+    private final Status status;
+    private final Long id;
+    private final String message;
+
+    public static StudentBatchResult created(int index, Long id) {
+        return new StudentBatchResult(index, Status.CREATED, id, null);
+    }
+
+    public static StudentBatchResult invalid(int index, String message) {
+        return new StudentBatchResult(index, Status.INVALID, null, message);
+    }
+
+    public static StudentBatchResult emailTaken(int index, String email) {
+        return new StudentBatchResult(index, Status.EMAIL_TAKEN, null, "Email " + email + " taken");
+    }
+}
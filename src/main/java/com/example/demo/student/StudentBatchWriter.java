@@ -0,0 +1,71 @@
+package com.example.demo.student;
+
+import com.example.demo.student.exception.BadRequestException;
+import lombok.AllArgsConstructor;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Creates students in batches through {@link StudentService#addStudents(List)}
+ * for callers that batch unrelated students together, so one student cannot
+ * fail the others.
+ *
+ * <p>A batch is checked for taken emails before it is inserted, but an email
+ * taken concurrently still fails it on the unique constraint. The batch is
+ * then split in halves, each written in its own transaction and split again
+ * if it fails too, down to the offending student. That one is reported
+ * {@link StudentBatchResult.Status#EMAIL_TAKEN} when its email is taken, or
+ * {@link StudentBatchResult.Status#INVALID} when it violates another
+ * constraint.
+ */
+@AllArgsConstructor
+@Component
+public class StudentBatchWriter {
+
+    private final StudentService studentService;
+
+    /**
+     * @return one outcome per student, at the student's index
+     */
+    public List<StudentBatchResult> write(List<Student> students) {
+        StudentBatchResult[] results = new StudentBatchResult[students.size()];
+        write(students, 0, results);
+        return Arrays.asList(results);
+    }
+
+    private void write(List<Student> students, int offset, StudentBatchResult[] results) {
+        try {
+            for (StudentBatchResult result : studentService.addStudents(students)) {
+                int index = offset + result.getIndex();
+                results[index] = new StudentBatchResult(
+                        index, result.getStatus(), result.getId(), result.getMessage());
+            }
+        } catch (DataIntegrityViolationException e) {
+            if (students.size() == 1) {
+                results[offset] = writeAlone(students.get(0), offset);
+                return;
+            }
+            int half = students.size() / 2;
+            write(new ArrayList<>(students.subList(0, half)), offset, results);
+            write(new ArrayList<>(students.subList(half, students.size())), offset + half, results);
+        }
+    }
+
+    /**
+     * A single student already validated by {@code addStudents}, which looks
+     * the email up once the insert has failed.
+     */
+    private StudentBatchResult writeAlone(Student student, int index) {
+        try {
+            return StudentBatchResult.created(index, studentService.addStudent(student).getId());
+        } catch (BadRequestException e) {
+            return StudentBatchResult.emailTaken(index, student.getEmail());
+        } catch (DataIntegrityViolationException e) {
+            return StudentBatchResult.invalid(index, "Violates a database constraint");
+        }
+    }
+}
@@ -0,0 +1,31 @@
+package com.example.demo.student;
+
+import lombok.AllArgsConstructor;
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+import lombok.ToString;
+
+/**
+ * A committed create, update or delete, numbered in commit order by
+ * {@link StudentChangeFeed}.
+ */
+@ToString
+@Getter
+@EqualsAndHashCode
+@AllArgsConstructor
+public class StudentChangeEvent {
+
+    public enum Type {
+        CREATED,
+        UPDATED,
+        DELETED
+    }
+
+    private final long sequence;
+    private final Type type;
+    private final Long studentId;
+    /**
+     * The student as written, {@code null} for deletes.
+     */
+    private final Student student;
+}
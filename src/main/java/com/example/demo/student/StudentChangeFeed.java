@@ -0,0 +1,305 @@
+package com.example.demo.student;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.MediaType;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * Publishes committed student changes to server-sent event subscribers.
+ *
+ * <p>The last {@code student.changes.buffer-size} events are kept in a ring
+ * buffer, numbered in commit order; the number is the SSE event id, so a
+ * client reconnecting with {@code Last-Event-ID} is replayed what it missed.
+ * Subscribers hold no copies of the events, only how far they got, so a burst
+ * of changes committed together costs them nothing but catching up. One that
+ * has events pending but sends none for {@code student.changes.stall-timeout},
+ * or falls out of the ring buffer, is disconnected rather than waited for. A
+ * client whose position is no longer retained, or predates a restart, first
+ * gets a {@value #RESET_EVENT} event and should reload the students before
+ * applying further changes.
+ *
+ * <p>Events are written by a small pool of delivery threads, never by the
+ * thread that committed the change, so a slow client cannot hold up writes.
+ */
+@Slf4j
+@Component
+public class StudentChangeFeed implements MeterBinder {
+
+    static final String RESET_EVENT = "reset";
+    private static final int MAX_EVENTS_PER_READ = 256;
+    /**
+     * Marks a subscriber with nothing pending; not 0, which
+     * {@link System#nanoTime()} may return.
+     */
+    private static final long CAUGHT_UP = Long.MIN_VALUE;
+
+    private final StudentChangeEvent[] ring;
+    private final long stallTimeoutNanos;
+    private final long emitterTimeoutMs;
+    private final ExecutorService delivery;
+    private final LongSupplier nanoTime;
+    private final Set<Subscriber> subscribers = ConcurrentHashMap.newKeySet();
+    private final LongAdder disconnected = new LongAdder();
+    /**
+     * Sequence of the last published event, 0 before the first; guarded by
+     * {@code this} together with {@link #ring}.
+     */
+    private long head;
+
+    @Autowired
+    public StudentChangeFeed(
+            @Value("${student.changes.buffer-size:1024}") int bufferSize,
+            @Value("${student.changes.stall-timeout:30s}") Duration stallTimeout,
+            @Value("${student.changes.delivery-threads:4}") int deliveryThreads,
+            @Value("${student.changes.emitter-timeout:30m}") Duration emitterTimeout) {
+        this(bufferSize, stallTimeout, emitterTimeout, Executors.newFixedThreadPool(deliveryThreads,
+                new ThreadFactoryBuilder().setNameFormat("student-changes-%d").setDaemon(true).build()),
+                System::nanoTime);
+    }
+
+    StudentChangeFeed(int bufferSize, Duration stallTimeout, Duration emitterTimeout,
+                      ExecutorService delivery, LongSupplier nanoTime) {
+        this.ring = new StudentChangeEvent[bufferSize];
+        this.stallTimeoutNanos = stallTimeout.toNanos();
+        this.emitterTimeoutMs = emitterTimeout.toMillis();
+        this.delivery = delivery;
+        this.nanoTime = nanoTime;
+    }
+
+    public void recordCreated(Student student) {
+        publishAfterCommit(StudentChangeEvent.Type.CREATED, student.getId(), copyOf(student));
+    }
+
+    public void recordUpdated(Student student) {
+        publishAfterCommit(StudentChangeEvent.Type.UPDATED, student.getId(), copyOf(student));
+    }
+
+    public void recordDeleted(Long studentId) {
+        publishAfterCommit(StudentChangeEvent.Type.DELETED, studentId, null);
+    }
+
+    /**
+     * Streams the changes committed after {@code lastEventId}, or from now on
+     * when {@code null}.
+     */
+    public SseEmitter subscribe(Long lastEventId) {
+        Subscriber subscriber;
+        synchronized (this) {
+            boolean reset = lastEventId != null && (lastEventId > head || head - lastEventId > ring.length);
+            long cursor = lastEventId == null || reset ? head : lastEventId;
+            subscriber = new Subscriber(new SseEmitter(emitterTimeoutMs), cursor, reset);
+        }
+        SseEmitter emitter = subscriber.emitter;
+        emitter.onCompletion(subscriber::close);
+        emitter.onTimeout(subscriber::close);
+        emitter.onError(error -> subscriber.close());
+        subscribers.add(subscriber);
+        subscriber.signal(latest());
+        return emitter;
+    }
+
+    /**
+     * Keeps idle connections from being closed by proxies, and notices
+     * clients that went away without a word or stalled with nothing new
+     * published.
+     */
+    @Scheduled(fixedDelayString = "${student.changes.heartbeat-interval-ms:15000}")
+    public void heartbeat() {
+        subscribers.forEach(Subscriber::heartbeat);
+    }
+
+    @PreDestroy
+    public void stop() {
+        subscribers.forEach(subscriber -> subscriber.emitter.complete());
+        delivery.shutdownNow();
+    }
+
+    int getSubscriberCount() {
+        return subscribers.size();
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        Gauge.builder("student.changes.subscribers", subscribers, Set::size)
+                .description("Clients streaming student changes")
+                .register(registry);
+        FunctionCounter.builder("student.changes.disconnected", disconnected, LongAdder::sum)
+                .description("Subscribers dropped for stalling or falling out of the buffer")
+                .register(registry);
+    }
+
+    private void publishAfterCommit(StudentChangeEvent.Type type, Long studentId, Student student) {
+        AfterCommit.run(() -> publish(type, studentId, student));
+    }
+
+    private void publish(StudentChangeEvent.Type type, Long studentId, Student student) {
+        long sequence;
+        synchronized (this) {
+            sequence = ++head;
+            ring[(int) (sequence % ring.length)] = new StudentChangeEvent(sequence, type, studentId, student);
+        }
+        for (Subscriber subscriber : subscribers) {
+            subscriber.signal(sequence);
+        }
+    }
+
+    private synchronized long latest() {
+        return head;
+    }
+
+    /**
+     * The events after {@code cursor}, at most {@link #MAX_EVENTS_PER_READ}
+     * of them, or none once the ring buffer moved past the cursor.
+     */
+    private synchronized List<StudentChangeEvent> eventsAfter(long cursor) {
+        if (head - cursor > ring.length) {
+            return List.of();
+        }
+        long to = Math.min(head, cursor + MAX_EVENTS_PER_READ);
+        List<StudentChangeEvent> events = new ArrayList<>((int) (to - cursor));
+        for (long sequence = cursor + 1; sequence <= to; sequence++) {
+            events.add(ring[(int) (sequence % ring.length)]);
+        }
+        return events;
+    }
+
+    private static Student copyOf(Student student) {
+        return new Student(student.getId(), student.getName(), student.getEmail(),
+                student.getGender(), student.getVersion());
+    }
+
+    private final class Subscriber {
+        private final SseEmitter emitter;
+        private final AtomicBoolean draining = new AtomicBoolean();
+        private volatile long cursor;
+        /**
+         * When the subscriber last sent an event or, if it sent none since,
+         * fell behind; {@link #CAUGHT_UP} while it is caught up.
+         */
+        private volatile long pendingSince = CAUGHT_UP;
+        private volatile boolean reset;
+        private volatile boolean closed;
+
+        Subscriber(SseEmitter emitter, long cursor, boolean reset) {
+            this.emitter = emitter;
+            this.cursor = cursor;
+            this.reset = reset;
+        }
+
+        /**
+         * Called on the publishing thread, so it only hands work over.
+         */
+        void signal(long latest) {
+            if (closed) {
+                return;
+            }
+            if (pendingSince == CAUGHT_UP && latest > cursor) {
+                pendingSince = nanoTime.getAsLong();
+            }
+            if (latest - cursor > ring.length || isStalled()) {
+                disconnect(latest);
+                return;
+            }
+            if (draining.compareAndSet(false, true)) {
+                delivery.execute(this::drain);
+            }
+        }
+
+        void heartbeat() {
+            if (closed) {
+                return;
+            }
+            if (isStalled()) {
+                disconnect(latest());
+                return;
+            }
+            if (draining.compareAndSet(false, true)) {
+                delivery.execute(() -> {
+                    try {
+                        emitter.send(SseEmitter.event().comment(""));
+                    } catch (IOException | IllegalStateException e) {
+                        close();
+                    } finally {
+                        draining.set(false);
+                    }
+                    // an event published during the send found the flag taken
+                    if (!closed && latest() > cursor) {
+                        signal(latest());
+                    }
+                });
+            }
+        }
+
+        private void drain() {
+            try {
+                if (reset) {
+                    emitter.send(SseEmitter.event()
+                            .name(RESET_EVENT)
+                            .id(Long.toString(cursor))
+                            .data(cursor));
+                    reset = false;
+                }
+                List<StudentChangeEvent> events;
+                while (!closed && !(events = eventsAfter(cursor)).isEmpty()) {
+                    for (StudentChangeEvent event : events) {
+                        emitter.send(SseEmitter.event()
+                                .id(Long.toString(event.getSequence()))
+                                .data(event, MediaType.APPLICATION_JSON));
+                        cursor = event.getSequence();
+                        pendingSince = nanoTime.getAsLong();
+                    }
+                }
+                pendingSince = CAUGHT_UP;
+            } catch (IOException | IllegalStateException e) {
+                // the client went away, or the emitter completed
+                close();
+            } finally {
+                draining.set(false);
+            }
+            // an event published after the last read but before the flag was reset
+            if (!closed && latest() > cursor) {
+                signal(latest());
+            }
+        }
+
+        private boolean isStalled() {
+            long since = pendingSince;
+            return since != CAUGHT_UP && nanoTime.getAsLong() - since > stallTimeoutNanos;
+        }
+
+        private void disconnect(long latest) {
+            log.info("Disconnecting a student change subscriber {} events behind", latest - cursor);
+            disconnected.increment();
+            close();
+            // completing waits for a send in progress, so not on this thread
+            delivery.execute(emitter::complete);
+        }
+
+        void close() {
+            closed = true;
+            subscribers.remove(this);
+        }
+    }
+}
@@ -1,59 +1,291 @@
 package com.example.demo.student;
 
+import com.example.demo.config.BinaryContentConfig;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
 import lombok.AllArgsConstructor;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.context.annotation.Profile;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+import org.springframework.web.servlet.support.ServletUriComponentsBuilder;
 
 import javax.validation.Valid;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Optional;
 
+@Profile("!reactive")
 @RestController
 @RequestMapping(path = "api/v1/students")
 @AllArgsConstructor
 public class StudentController {
 
     private final StudentService studentService;
+    private final ObjectMapper objectMapper;
+    private final ObjectProvider<StudentIngestQueue> ingestQueue;
+    private final StudentListCache studentListCache;
+    private final StudentImporter studentImporter;
+    private final StudentChangeFeed studentChangeFeed;
+    private final StudentIdempotencyStore studentIdempotencyStore;
 
-    @GetMapping
+    /**
+     * The list in the binary formats; JSON is served by
+     * {@link #getAllStudentsJson(String)}.
+     */
+    @GetMapping(produces = {MediaType.APPLICATION_CBOR_VALUE, BinaryContentConfig.APPLICATION_SMILE_VALUE})
     public ResponseEntity<List<Student>> getAllStudents() {
         List<Student> students = studentService.getAllStudents();
         return ResponseEntity.ok(students);
     }
 
+    /**
+     * The list as JSON, served from {@link StudentListCache} without querying
+     * or serializing again until a write, gzip compressed when the client
+     * accepts it. Answers {@code If-None-Match} with 304 Not Modified. Declares
+     * no media type so that it, not a binary format, serves clients accepting
+     * anything.
+     */
+    @GetMapping
+    public ResponseEntity<byte[]> getAllStudentsJson(
+            @RequestHeader(value = HttpHeaders.ACCEPT_ENCODING, required = false) String acceptEncoding) {
+        StudentListCache.Body body = studentListCache.get(studentService::getAllStudents);
+        ResponseEntity.BodyBuilder response = ResponseEntity.ok()
+                .contentType(MediaType.APPLICATION_JSON)
+                .eTag(body.getETag())
+                .varyBy(HttpHeaders.ACCEPT_ENCODING);
+        if (acceptsGzip(acceptEncoding)) {
+            return response
+                    .header(HttpHeaders.CONTENT_ENCODING, "gzip")
+                    .body(body.getGzip());
+        }
+        return response.body(body.getJson());
+    }
+
+    /**
+     * Students with the given ids, e.g. {@code ?ids=1,2,3}, in that order.
+     * Ids matching no student are left out.
+     */
+    @GetMapping(params = "ids")
+    public ResponseEntity<List<Student>> getStudentsByIds(@RequestParam List<Long> ids) {
+        List<Student> students = studentService.getStudentsByIds(ids);
+        return ResponseEntity.ok(students);
+    }
+
+    @GetMapping(path = "page")
+    public ResponseEntity<StudentPage> getStudentPage(
+            @RequestParam(required = false) String cursor,
+            @RequestParam(defaultValue = "" + StudentService.DEFAULT_PAGE_SIZE) int size,
+            @RequestParam(required = false) Gender gender) {
+        StudentPage page = studentService.getStudentPage(cursor, size, gender);
+        return ResponseEntity.ok(page);
+    }
+
+    @GetMapping(path = "search")
+    public ResponseEntity<List<StudentSummary>> searchStudents(
+            @RequestParam(required = false) String name,
+            @RequestParam(required = false) Gender gender,
+            @RequestParam(required = false) String emailDomain,
+            @RequestParam(defaultValue = "" + StudentService.DEFAULT_SEARCH_LIMIT) int limit) {
+        List<StudentSummary> students = studentService.searchStudents(name, gender, emailDomain, limit);
+        return ResponseEntity.ok(students);
+    }
+
+    @GetMapping(path = "stats")
+    public ResponseEntity<StudentStats> getStudentStats() {
+        StudentStats stats = studentService.getStudentStats();
+        return ResponseEntity.ok(stats);
+    }
+
+    @GetMapping(path = "export", produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public ResponseEntity<StreamingResponseBody> exportStudents() {
+        ObjectWriter writer = objectMapper.writerFor(Student.class);
+        StreamingResponseBody body = outputStream ->
+                studentService.exportStudents(student -> {
+                    try {
+                        outputStream.write(writer.writeValueAsBytes(student));
+                        outputStream.write('\n');
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                });
+        return ResponseEntity.ok()
+                .contentType(MediaType.APPLICATION_NDJSON)
+                .body(body);
+    }
+
+    /**
+     * Server-sent events for every committed create, update and delete, in
+     * place of polling the list. Reconnecting clients pass the last event id
+     * they saw to be replayed what they missed, see {@link StudentChangeFeed}.
+     */
+    @GetMapping(path = "changes", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter streamChanges(
+            @RequestHeader(value = "Last-Event-ID", required = false) Long lastEventId) {
+        return studentChangeFeed.subscribe(lastEventId);
+    }
+
+    /**
+     * Creates the student, or with student ingest enabled queues it and
+     * answers 202 Accepted with a status to poll. A retry carrying the same
+     * {@code Idempotency-Key} gets the first response back, see
+     * {@link StudentIdempotencyStore}.
+     */
     @PostMapping
-    public ResponseEntity<Student> addStudent(@Valid @RequestBody Student student) {
+    public ResponseEntity<?> addStudent(
+            @RequestHeader(value = StudentIdempotencyStore.IDEMPOTENCY_KEY, required = false) String idempotencyKey,
+            @Valid @RequestBody Student student) {
+        return studentIdempotencyStore.execute(
+                idempotencyKey, "POST /api/v1/students", fingerprint(student, null),
+                () -> createStudent(student));
+    }
+
+    private ResponseEntity<Object> createStudent(Student student) {
+        StudentIngestQueue queue = ingestQueue.getIfAvailable();
+        if (queue != null) {
+            StudentIngestStatus status = queue.submit(student);
+            return ResponseEntity.accepted()
+                    .location(ServletUriComponentsBuilder.fromCurrentRequestUri()
+                            .path("/ingest/{trackingId}")
+                            .buildAndExpand(status.getTrackingId())
+                            .toUri())
+                    .body(status);
+        }
         Student savedStudent = studentService.addStudent(student);
-        return ResponseEntity.status(HttpStatus.CREATED).body(savedStudent);
+        return ResponseEntity.status(HttpStatus.CREATED)
+                .eTag(StudentETag.format(savedStudent.getVersion()))
+                .body(savedStudent);
+    }
+
+    @GetMapping(path = "ingest/{trackingId}")
+    public ResponseEntity<StudentIngestStatus> getIngestStatus(@PathVariable String trackingId) {
+        StudentIngestQueue queue = ingestQueue.getIfAvailable();
+        Optional<StudentIngestStatus> status = queue == null
+                ? Optional.empty()
+                : queue.getStatus(trackingId);
+        return status.map(ResponseEntity::ok)
+                .orElseGet(() -> ResponseEntity.notFound().build());
+    }
+
+    @PostMapping(path = "batch")
+    public ResponseEntity<List<StudentBatchResult>> addStudents(@RequestBody List<Student> students) {
+        List<StudentBatchResult> results = studentService.addStudents(students);
+        return ResponseEntity.ok(results);
+    }
+
+    /**
+     * Queues an import of the CSV request body, a {@code name,email,gender}
+     * header followed by one student per row, and answers 202 Accepted with a
+     * status to poll.
+     */
+    @PostMapping(path = "import", consumes = "text/csv")
+    public ResponseEntity<StudentImportStatus> importStudents(InputStream csv) {
+        return accepted(studentImporter.submit(csv));
+    }
+
+    @PostMapping(path = "import", consumes = MediaType.MULTIPART_FORM_DATA_VALUE)
+    public ResponseEntity<StudentImportStatus> importStudents(@RequestPart("file") MultipartFile file)
+            throws IOException {
+        try (InputStream csv = file.getInputStream()) {
+            return accepted(studentImporter.submit(csv));
+        }
+    }
+
+    @GetMapping(path = "import/{jobId}")
+    public ResponseEntity<StudentImportStatus> getImportStatus(@PathVariable String jobId) {
+        return studentImporter.getStatus(jobId)
+                .map(ResponseEntity::ok)
+                .orElseGet(() -> ResponseEntity.notFound().build());
+    }
+
+    @PostMapping(path = "delete-batch")
+    public ResponseEntity<StudentDeleteResult> deleteStudents(@RequestBody List<Long> ids) {
+        StudentDeleteResult result = studentService.deleteStudents(ids);
+        return ResponseEntity.ok(result);
     }
 
     @DeleteMapping(path = "{studentId}")
     public ResponseEntity<Void> deleteStudent(
-            @PathVariable("studentId") Long studentId) {
-        studentService.deleteStudent(studentId);
+            @PathVariable("studentId") Long studentId,
+            @RequestHeader(value = HttpHeaders.IF_MATCH, required = false) String ifMatch) {
+        studentService.deleteStudent(studentId, StudentETag.parseIfMatch(ifMatch));
         return ResponseEntity.noContent().build();
     }
 
+    /**
+     * Answers {@code If-None-Match} with 304 Not Modified, without writing
+     * the body, when the ETag still matches.
+     */
     @GetMapping("/{id}")
     public ResponseEntity<Student> getStudentById(@PathVariable Long id) {
         Optional<Student> studentOptional = studentService.getStudentById(id);
         if (studentOptional.isPresent()) {
-            return ResponseEntity.ok(studentOptional.get());
+            Student student = studentOptional.get();
+            return ResponseEntity.ok()
+                    .eTag(StudentETag.format(student.getVersion()))
+                    .body(student);
         } else {
             return ResponseEntity.notFound().build();
         }
     }
 
     @PutMapping("/{id}")
-    public ResponseEntity<Student> updateStudentById(@PathVariable Long id, @Valid @RequestBody Student student) {
-        Optional<Student> studentOptional = studentService.getStudentById(id);
-        if (studentOptional.isPresent()) {
-            student.setId(id);
-            Student updatedStudent = studentService.saveEditStudent(student, id);
-            return ResponseEntity.ok(updatedStudent);
-        } else {
-            return ResponseEntity.notFound().build();
+    public ResponseEntity<Student> updateStudentById(
+            @PathVariable Long id,
+            @RequestHeader(value = HttpHeaders.IF_MATCH, required = false) String ifMatch,
+            @RequestHeader(value = StudentIdempotencyStore.IDEMPOTENCY_KEY, required = false) String idempotencyKey,
+            @Valid @RequestBody Student student) {
+        return studentIdempotencyStore.execute(
+                idempotencyKey, "PUT /api/v1/students/" + id, fingerprint(student, ifMatch),
+                () -> updateStudent(id, ifMatch, student));
+    }
+
+    private ResponseEntity<Student> updateStudent(Long id, String ifMatch, Student student) {
+        Student updatedStudent = studentService.saveEditStudent(
+                student, id, StudentETag.parseIfMatch(ifMatch));
+        ResponseEntity.BodyBuilder response = ResponseEntity.ok();
+        if (updatedStudent.getVersion() != null) {
+            response.eTag(StudentETag.format(updatedStudent.getVersion()));
+        }
+        return response.body(updatedStudent);
+    }
+
+    /**
+     * Taken before the write, which assigns the student an id.
+     */
+    private static List<Object> fingerprint(Student student, String ifMatch) {
+        return Arrays.asList(student.getName(), student.getEmail(), student.getGender(), ifMatch);
+    }
+
+    private static ResponseEntity<StudentImportStatus> accepted(StudentImportStatus status) {
+        return ResponseEntity.accepted()
+                .location(ServletUriComponentsBuilder.fromCurrentRequestUri()
+                        .path("/{jobId}")
+                        .buildAndExpand(status.getJobId())
+                        .toUri())
+                .body(status);
+    }
+
+    private static boolean acceptsGzip(String acceptEncoding) {
+        if (acceptEncoding == null) {
+            return false;
+        }
+        for (String coding : acceptEncoding.split(",")) {
+            String[] parts = coding.trim().split(";");
+            if (parts[0].trim().equalsIgnoreCase("gzip")) {
+                // gzip;q=0 means not acceptable
+                return parts.length < 2 || !parts[1].trim().matches("q=0(\\.0*)?");
+            }
         }
+        return false;
     }
 }
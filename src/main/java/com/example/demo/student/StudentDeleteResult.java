@@ -0,0 +1,20 @@
+package com.example.demo.student;
+
+import lombok.AllArgsConstructor;
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+import lombok.ToString;
+
+import java.util.List;
+
+@ToString
+@Getter
+@EqualsAndHashCode
+@AllArgsConstructor
+public class StudentDeleteResult {
+    private final int deleted;
+    /**
+     * Requested ids that matched no student, in request order.
+     */
+    private final List<Long> missingIds;
+}
@@ -0,0 +1,38 @@
+package com.example.demo.student;
+
+import com.example.demo.student.exception.PreconditionFailedException;
+
+/**
+ * Strong entity tags derived from {@link Student#getVersion()}. Rows written
+ * before the version column existed have no version and are treated as
+ * version 0.
+ */
+public final class StudentETag {
+
+    private StudentETag() {
+    }
+
+    public static String format(Long version) {
+        return "\"" + (version == null ? 0 : version) + "\"";
+    }
+
+    /**
+     * @return the version required by an {@code If-Match} header, or
+     * {@code null} if any version is acceptable
+     */
+    public static Long parseIfMatch(String ifMatch) {
+        if (ifMatch == null || ifMatch.isBlank() || ifMatch.trim().equals("*")) {
+            return null;
+        }
+        String tag = ifMatch.trim();
+        // weak tags never match with the strong comparison If-Match requires
+        if (tag.length() < 2 || !tag.startsWith("\"") || !tag.endsWith("\"")) {
+            throw new PreconditionFailedException("If-Match " + ifMatch + " does not match");
+        }
+        try {
+            return Long.parseLong(tag.substring(1, tag.length() - 1));
+        } catch (NumberFormatException e) {
+            throw new PreconditionFailedException("If-Match " + ifMatch + " does not match");
+        }
+    }
+}
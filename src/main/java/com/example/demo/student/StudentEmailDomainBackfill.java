@@ -0,0 +1,27 @@
+package com.example.demo.student;
+
+import lombok.AllArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+/**
+ * Fills in the email domain of students written before the column existed,
+ * who are not found by domain searches until this has run.
+ */
+@Slf4j
+@Component
+@AllArgsConstructor
+public class StudentEmailDomainBackfill {
+
+    private final StudentRepository studentRepository;
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void backfill() {
+        int updated = studentRepository.backfillEmailDomains();
+        if (updated > 0) {
+            log.info("Filled in the email domain of {} students", updated);
+        }
+    }
+}
@@ -0,0 +1,196 @@
+package com.example.demo.student;
+
+import com.example.demo.config.ReplicaRoutingDataSource;
+import com.google.common.hash.BloomFilter;
+import com.google.common.hash.Funnels;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Stream;
+
+/**
+ * Bloom filter over every student email, kept in front of the email lookups
+ * in {@link StudentRepository}. A negative answer is definite, so the query
+ * can be skipped; a positive answer still has to be confirmed by the
+ * database.
+ *
+ * <p>The filter is built from a streaming scan once the application is
+ * ready, and emails are added as students are written. Bloom filters cannot
+ * forget, so deletes and email changes are only counted, and the filter is
+ * rebuilt once enough of its entries may be stale. Until the first build
+ * completes every email is reported as possibly present.
+ */
+@Slf4j
+@Component
+public class StudentEmailFilter implements MeterBinder {
+
+    private final StudentRepository studentRepository;
+    private final TransactionTemplate readOnlyTransaction;
+    private final long expectedInsertions;
+    private final double falsePositiveRate;
+    private final double staleRatio;
+
+    private volatile BloomFilter<String> filter;
+    private volatile BloomFilter<String> rebuilding;
+    private volatile long capacity;
+
+    private final LongAdder checks = new LongAdder();
+    private final LongAdder negatives = new LongAdder();
+    private final LongAdder unconfirmed = new LongAdder();
+    private final LongAdder removals = new LongAdder();
+
+    public StudentEmailFilter(
+            StudentRepository studentRepository,
+            PlatformTransactionManager transactionManager,
+            @Value("${student.email-filter.expected-insertions:1000000}") long expectedInsertions,
+            @Value("${student.email-filter.false-positive-rate:0.01}") double falsePositiveRate,
+            @Value("${student.email-filter.stale-ratio:0.1}") double staleRatio) {
+        this.studentRepository = studentRepository;
+        this.readOnlyTransaction = new TransactionTemplate(transactionManager);
+        this.readOnlyTransaction.setReadOnly(true);
+        this.expectedInsertions = expectedInsertions;
+        this.falsePositiveRate = falsePositiveRate;
+        this.staleRatio = staleRatio;
+    }
+
+    /**
+     * @return {@code false} only if no student has this email
+     */
+    public boolean mightContain(String email) {
+        checks.increment();
+        BloomFilter<String> current = filter;
+        if (current == null || current.mightContain(normalize(email))) {
+            return true;
+        }
+        negatives.increment();
+        return false;
+    }
+
+    /**
+     * Records that the database did not confirm a positive answer.
+     */
+    public void recordUnconfirmed() {
+        unconfirmed.increment();
+    }
+
+    /**
+     * Adds an email once the surrounding transaction, if any, has committed.
+     */
+    public void add(String email) {
+        AfterCommit.run(() -> put(email));
+    }
+
+    /**
+     * Records that an email may no longer be in use.
+     */
+    public void recordRemoval() {
+        removals.increment();
+    }
+
+    private void put(String email) {
+        // read rebuilding before filter: a rebuild publishes the new filter
+        // before clearing rebuilding, so the email reaches the new filter
+        // either way
+        BloomFilter<String> next = rebuilding;
+        BloomFilter<String> current = filter;
+        String key = normalize(email);
+        if (current != null) {
+            current.put(key);
+        }
+        if (next != null && next != current) {
+            next.put(key);
+        }
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void warmUp() {
+        try {
+            rebuild();
+        } catch (RuntimeException e) {
+            log.warn("Could not build the student email filter, will retry", e);
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${student.email-filter.check-interval-ms:60000}",
+            initialDelayString = "${student.email-filter.check-interval-ms:60000}")
+    public void rebuildIfStale() {
+        BloomFilter<String> current = filter;
+        if (current == null
+                || removals.sum() > current.approximateElementCount() * staleRatio
+                || current.approximateElementCount() > capacity) {
+            warmUp();
+        }
+    }
+
+    public synchronized void rebuild() {
+        long nextCapacity = filter == null
+                ? expectedInsertions
+                : Math.max(expectedInsertions, filter.approximateElementCount() * 2);
+        BloomFilter<String> next = BloomFilter.create(
+                Funnels.stringFunnel(StandardCharsets.UTF_8), nextCapacity, falsePositiveRate);
+        long removalsBefore = removals.sum();
+        rebuilding = next;
+        try {
+            // a replica may miss recent emails, and a false negative lets a duplicate reach the insert
+            ReplicaRoutingDataSource.onPrimary(() -> {
+                readOnlyTransaction.executeWithoutResult(status -> {
+                    try (Stream<String> emails = studentRepository.streamAllEmails()) {
+                        emails.forEach(email -> next.put(normalize(email)));
+                    }
+                });
+                return null;
+            });
+            capacity = nextCapacity;
+            filter = next;
+            removals.add(-removalsBefore);
+        } finally {
+            rebuilding = null;
+        }
+        log.info("Built student email filter with about {} emails", next.approximateElementCount());
+    }
+
+    private static String normalize(String email) {
+        // a case-insensitive unique index must never see a false negative
+        return email.toLowerCase(Locale.ROOT);
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        Gauge.builder("student.email.filter.size", this,
+                        f -> f.filter == null ? 0 : f.filter.approximateElementCount())
+                .description("Approximate number of emails in the filter")
+                .register(registry);
+        Gauge.builder("student.email.filter.false.positive.rate", this,
+                        f -> f.filter == null ? 1 : f.filter.expectedFpp())
+                .description("Probability that an unknown email is reported as possibly present")
+                .register(registry);
+        Gauge.builder("student.email.filter.hit.ratio", this, StudentEmailFilter::hitRatio)
+                .description("Share of checks answered without querying the database")
+                .register(registry);
+        FunctionCounter.builder("student.email.filter.checks", checks, LongAdder::sum)
+                .register(registry);
+        FunctionCounter.builder("student.email.filter.skipped.queries", negatives, LongAdder::sum)
+                .register(registry);
+        FunctionCounter.builder("student.email.filter.unconfirmed", unconfirmed, LongAdder::sum)
+                .description("Possible matches the database did not confirm")
+                .register(registry);
+    }
+
+    double hitRatio() {
+        long total = checks.sum();
+        return total == 0 ? 0 : (double) negatives.sum() / total;
+    }
+}
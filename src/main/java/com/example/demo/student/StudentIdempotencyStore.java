@@ -0,0 +1,145 @@
+package com.example.demo.student;
+
+import com.example.demo.student.exception.BadRequestException;
+import com.example.demo.student.exception.ConflictException;
+import com.example.demo.student.exception.UnprocessableEntityException;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.annotation.AnnotatedElementUtils;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Component;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+import java.time.Duration;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Supplier;
+
+/**
+ * Remembers the outcome of writes sent with an {@value #IDEMPOTENCY_KEY}
+ * header, so that a client retrying after a timeout gets the original
+ * response instead of a second write.
+ *
+ * <p>Responses are replayed with their status, headers and body, marked with
+ * {@value #REPLAYED}. Client errors are replayed too, as the same exception,
+ * except 429 Too Many Requests, which a retry may get past. Server errors are
+ * forgotten so the next retry runs again. A request arriving while another
+ * with the same key is still running waits for that one's outcome, for at
+ * most {@code student.idempotency.wait-timeout}, rather than running twice.
+ *
+ * <p>Keys are kept for {@code student.idempotency.ttl}, at most
+ * {@code student.idempotency.max-keys} of them. A key is bound to the
+ * operation and content of the request first sent with it; reusing it for
+ * another one is answered 422 Unprocessable Entity.
+ */
+@Component
+public class StudentIdempotencyStore {
+
+    public static final String IDEMPOTENCY_KEY = "Idempotency-Key";
+    public static final String REPLAYED = "Idempotent-Replayed";
+    static final int MAX_KEY_LENGTH = 255;
+
+    private final Cache<String, Outcome> outcomes;
+    private final long waitTimeoutMs;
+
+    public StudentIdempotencyStore(
+            @Value("${student.idempotency.max-keys:100000}") long maxKeys,
+            @Value("${student.idempotency.ttl:24h}") Duration ttl,
+            @Value("${student.idempotency.wait-timeout:10s}") Duration waitTimeout) {
+        this.outcomes = Caffeine.newBuilder()
+                .maximumSize(maxKeys)
+                .expireAfterWrite(ttl)
+                .build();
+        this.waitTimeoutMs = waitTimeout.toMillis();
+    }
+
+    /**
+     * Runs {@code write}, or replays its earlier outcome for the same key.
+     *
+     * @param key         the client's idempotency key, or {@code null} to
+     *                    just run the write
+     * @param operation   what the request does, e.g. {@code "PUT /api/v1/students/1"}
+     * @param fingerprint what the request carries; a later request with the
+     *                    same key must carry an equal one
+     */
+    public <T> ResponseEntity<T> execute(String key, String operation, Object fingerprint,
+                                         Supplier<ResponseEntity<T>> write) {
+        if (key == null) {
+            return write.get();
+        }
+        if (key.isBlank() || key.length() > MAX_KEY_LENGTH) {
+            throw new BadRequestException(
+                    IDEMPOTENCY_KEY + " must have 1 to " + MAX_KEY_LENGTH + " characters");
+        }
+        Outcome started = new Outcome(operation, fingerprint);
+        Outcome earlier = outcomes.asMap().putIfAbsent(key, started);
+        if (earlier == null) {
+            return run(key, started, write);
+        }
+        if (!earlier.operation.equals(operation) || !Objects.equals(earlier.fingerprint, fingerprint)) {
+            throw new UnprocessableEntityException(
+                    IDEMPOTENCY_KEY + " " + key + " was used for another request");
+        }
+        return replay(earlier);
+    }
+
+    private <T> ResponseEntity<T> run(String key, Outcome outcome, Supplier<ResponseEntity<T>> write) {
+        ResponseEntity<T> response;
+        try {
+            response = write.get();
+        } catch (RuntimeException | Error e) {
+            if (!isReplayable(e)) {
+                outcomes.asMap().remove(key, outcome);
+            }
+            outcome.result.completeExceptionally(e);
+            throw e;
+        }
+        outcome.result.complete(response);
+        return response;
+    }
+
+    @SuppressWarnings("unchecked")
+    private <T> ResponseEntity<T> replay(Outcome outcome) {
+        ResponseEntity<?> response;
+        try {
+            response = outcome.result.get(waitTimeoutMs, TimeUnit.MILLISECONDS);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof Error) {
+                throw (Error) e.getCause();
+            }
+            throw (RuntimeException) e.getCause();
+        } catch (TimeoutException e) {
+            throw new ConflictException("A request with the same " + IDEMPOTENCY_KEY + " is still running");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ConflictException("A request with the same " + IDEMPOTENCY_KEY + " is still running");
+        }
+        return (ResponseEntity<T>) ResponseEntity.status(response.getStatusCode())
+                .headers(response.getHeaders())
+                .header(REPLAYED, "true")
+                .body(response.getBody());
+    }
+
+    private static boolean isReplayable(Throwable e) {
+        ResponseStatus status = AnnotatedElementUtils.findMergedAnnotation(e.getClass(), ResponseStatus.class);
+        return status != null
+                && status.code().is4xxClientError()
+                && status.code() != HttpStatus.TOO_MANY_REQUESTS;
+    }
+
+    private static final class Outcome {
+        private final String operation;
+        private final Object fingerprint;
+        private final CompletableFuture<ResponseEntity<?>> result = new CompletableFuture<>();
+
+        Outcome(String operation, Object fingerprint) {
+            this.operation = operation;
+            this.fingerprint = fingerprint;
+        }
+    }
+}
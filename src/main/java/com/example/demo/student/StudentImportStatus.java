@@ -0,0 +1,48 @@
+package com.example.demo.student;
+
+import lombok.AllArgsConstructor;
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+import lombok.ToString;
+
+import java.time.Instant;
+import java.util.List;
+
+/**
+ * Progress of a CSV import run by {@link StudentImporter}, looked up by its
+ * job id.
+ */
+@ToString
+@Getter
+@EqualsAndHashCode
+@AllArgsConstructor
+public class StudentImportStatus {
+
+    public enum State {
+        QUEUED,
+        RUNNING,
+        COMPLETED,
+        FAILED
+    }
+
+    private final String jobId;
+    private final State state;
+    private final long rowsRead;
+    private final long created;
+    private final long invalid;
+    private final long emailTaken;
+    /**
+     * Rows read per second since the job started, until it finished.
+     */
+    private final double rowsPerSecond;
+    private final Instant startedAt;
+    private final Instant finishedAt;
+    /**
+     * Why the job failed, or {@code null}.
+     */
+    private final String message;
+    /**
+     * The first rejected rows, e.g. {@code "row 12: email must be a well-formed email address"}.
+     */
+    private final List<String> errors;
+}
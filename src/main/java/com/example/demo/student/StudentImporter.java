@@ -0,0 +1,303 @@
+package com.example.demo.student;
+
+import com.example.demo.student.exception.TooManyRequestsException;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.csv.CSVFormat;
+import org.apache.commons.csv.CSVParser;
+import org.apache.commons.csv.CSVRecord;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * Imports students from CSV files with a {@code name,email,gender} header.
+ *
+ * <p>An upload is first copied to a temporary file, so the request can end
+ * before the import does, then parsed row by row on a single background
+ * thread. Rows are handed to {@link StudentBatchWriter} in chunks of
+ * {@code student.import.chunk-size}: each chunk is validated, checked for
+ * taken emails with set-based lookups and committed on its own, so a failure
+ * loses at most the chunk in progress, and an email taken concurrently fails
+ * only its own row. At most {@code student.import.max-queued-jobs} imports
+ * wait behind the running one.
+ */
+@Slf4j
+@Component
+public class StudentImporter {
+
+    static final List<String> HEADER = List.of("name", "email", "gender");
+    private static final CSVFormat CSV_FORMAT = CSVFormat.DEFAULT
+            .withFirstRecordAsHeader()
+            .withIgnoreHeaderCase()
+            .withIgnoreEmptyLines()
+            .withTrim();
+    private static final char BYTE_ORDER_MARK = '\uFEFF';
+
+    private final StudentBatchWriter studentBatchWriter;
+    private final ExecutorService executor;
+    private final int chunkSize;
+    private final int maxReportedErrors;
+    private final Cache<String, Job> jobs;
+
+    @Autowired
+    public StudentImporter(
+            StudentBatchWriter studentBatchWriter,
+            @Value("${student.import.chunk-size:1000}") int chunkSize,
+            @Value("${student.import.max-queued-jobs:4}") int maxQueuedJobs,
+            @Value("${student.import.max-reported-errors:100}") int maxReportedErrors,
+            @Value("${student.import.status-retention:1h}") Duration statusRetention) {
+        this(studentBatchWriter, new ThreadPoolExecutor(
+                        1, 1, 0, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>(maxQueuedJobs),
+                        runnable -> new Thread(runnable, "student-import")),
+                chunkSize, maxReportedErrors, statusRetention);
+    }
+
+    StudentImporter(StudentBatchWriter studentBatchWriter, ExecutorService executor,
+                    int chunkSize, int maxReportedErrors, Duration statusRetention) {
+        this.studentBatchWriter = studentBatchWriter;
+        this.executor = executor;
+        this.chunkSize = Math.min(chunkSize, StudentService.MAX_BATCH_SIZE);
+        this.maxReportedErrors = maxReportedErrors;
+        this.jobs = Caffeine.newBuilder()
+                .expireAfterWrite(statusRetention)
+                .build();
+    }
+
+    /**
+     * Copies the CSV to a temporary file and queues its import.
+     *
+     * @return the queued status, carrying the job id
+     * @throws TooManyRequestsException if too many imports are queued
+     */
+    public StudentImportStatus submit(InputStream csv) {
+        Path file = spool(csv);
+        Job job = new Job(UUID.randomUUID().toString());
+        jobs.put(job.id, job);
+        try {
+            executor.execute(() -> run(job, file));
+        } catch (RejectedExecutionException e) {
+            jobs.invalidate(job.id);
+            delete(file);
+            throw new TooManyRequestsException("Too many student imports queued");
+        }
+        return job.status();
+    }
+
+    public Optional<StudentImportStatus> getStatus(String jobId) {
+        return Optional.ofNullable(jobs.getIfPresent(jobId)).map(Job::status);
+    }
+
+    @PreDestroy
+    public void stop() {
+        // committed chunks stay; the chunk in progress rolls back
+        executor.shutdownNow();
+    }
+
+    private static Path spool(InputStream csv) {
+        try {
+            Path file = Files.createTempFile("student-import-", ".csv");
+            try {
+                Files.copy(csv, file, StandardCopyOption.REPLACE_EXISTING);
+            } catch (IOException e) {
+                delete(file);
+                throw e;
+            }
+            return file;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot store the uploaded CSV", e);
+        }
+    }
+
+    private void run(Job job, Path file) {
+        job.start();
+        try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            skipByteOrderMark(reader);
+            try (CSVParser parser = CSV_FORMAT.parse(reader)) {
+                if (!parser.getHeaderMap().keySet().stream()
+                        .map(column -> column.toLowerCase(Locale.ROOT))
+                        .collect(Collectors.toSet())
+                        .containsAll(HEADER)) {
+                    job.fail("CSV header must contain " + String.join(",", HEADER));
+                    return;
+                }
+                List<Student> chunk = new ArrayList<>(chunkSize);
+                List<Long> rows = new ArrayList<>(chunkSize);
+                for (CSVRecord record : parser) {
+                    job.rowsRead++;
+                    Student student = toStudent(job, record);
+                    if (student == null) {
+                        continue;
+                    }
+                    chunk.add(student);
+                    rows.add(record.getRecordNumber());
+                    if (chunk.size() == chunkSize) {
+                        write(job, chunk, rows);
+                        chunk = new ArrayList<>(chunkSize);
+                        rows = new ArrayList<>(chunkSize);
+                    }
+                }
+                write(job, chunk, rows);
+            }
+            job.complete();
+        } catch (Exception e) {
+            log.warn("Student import {} failed", job.id, e);
+            job.fail(e.getMessage());
+        } finally {
+            delete(file);
+        }
+    }
+
+    private Student toStudent(Job job, CSVRecord record) {
+        if (!record.isConsistent()) {
+            job.reject(record.getRecordNumber(), "expected " + record.getParser().getHeaderNames().size()
+                    + " columns but found " + record.size());
+            return null;
+        }
+        Gender gender = null;
+        String genderValue = record.get("gender");
+        if (!genderValue.isEmpty()) {
+            try {
+                gender = Gender.valueOf(genderValue.toUpperCase(Locale.ROOT));
+            } catch (IllegalArgumentException e) {
+                job.reject(record.getRecordNumber(), "gender " + genderValue + " is unknown");
+                return null;
+            }
+        }
+        // left to the validator: blank name or email, missing gender
+        return new Student(record.get("name"), record.get("email"), gender);
+    }
+
+    private void write(Job job, List<Student> chunk, List<Long> rows) {
+        if (chunk.isEmpty()) {
+            return;
+        }
+        for (StudentBatchResult result : studentBatchWriter.write(chunk)) {
+            long row = rows.get(result.getIndex());
+            switch (result.getStatus()) {
+                case CREATED:
+                    job.created++;
+                    break;
+                case EMAIL_TAKEN:
+                    job.emailTaken++;
+                    job.error(row, result.getMessage());
+                    break;
+                default:
+                    job.reject(row, result.getMessage());
+            }
+        }
+    }
+
+    private static void skipByteOrderMark(BufferedReader reader) throws IOException {
+        reader.mark(1);
+        if (reader.read() != BYTE_ORDER_MARK) {
+            reader.reset();
+        }
+    }
+
+    private static void delete(Path file) {
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException e) {
+            log.warn("Cannot delete {}", file, e);
+        }
+    }
+
+    /**
+     * Written only by the import thread, read by status requests.
+     */
+    private final class Job {
+        private final String id;
+        private final List<String> errors = new ArrayList<>();
+        private volatile StudentImportStatus.State state = StudentImportStatus.State.QUEUED;
+        private volatile long rowsRead;
+        private volatile long created;
+        private volatile long invalid;
+        private volatile long emailTaken;
+        private volatile Instant startedAt;
+        private volatile long startedNanos;
+        private volatile Instant finishedAt;
+        private volatile long elapsedNanos;
+        private volatile String message;
+
+        Job(String id) {
+            this.id = id;
+        }
+
+        void start() {
+            startedAt = Instant.now();
+            startedNanos = System.nanoTime();
+            state = StudentImportStatus.State.RUNNING;
+        }
+
+        void reject(long row, String reason) {
+            invalid++;
+            error(row, reason);
+        }
+
+        void error(long row, String reason) {
+            synchronized (errors) {
+                if (errors.size() < maxReportedErrors) {
+                    errors.add("row " + row + ": " + reason);
+                }
+            }
+        }
+
+        void complete() {
+            finish(StudentImportStatus.State.COMPLETED, null);
+        }
+
+        void fail(String reason) {
+            finish(StudentImportStatus.State.FAILED, reason);
+        }
+
+        private void finish(StudentImportStatus.State finalState, String reason) {
+            elapsedNanos = System.nanoTime() - startedNanos;
+            finishedAt = Instant.now();
+            message = reason;
+            state = finalState;
+        }
+
+        StudentImportStatus status() {
+            StudentImportStatus.State current = state;
+            double seconds = 0;
+            if (current == StudentImportStatus.State.RUNNING) {
+                seconds = (System.nanoTime() - startedNanos) / 1e9;
+            } else if (current != StudentImportStatus.State.QUEUED) {
+                seconds = elapsedNanos / 1e9;
+            }
+            List<String> reported;
+            synchronized (errors) {
+                reported = List.copyOf(errors);
+            }
+            return new StudentImportStatus(
+                    id, current, rowsRead, created, invalid, emailTaken,
+                    seconds > 0 ? rowsRead / seconds : 0,
+                    startedAt, finishedAt, message, reported);
+        }
+    }
+}
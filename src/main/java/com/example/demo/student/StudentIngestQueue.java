@@ -0,0 +1,199 @@
+package com.example.demo.student;
+
+import com.example.demo.student.exception.ServiceUnavailableException;
+import com.example.demo.student.exception.TooManyRequestsException;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Write-behind queue for student creation, enabled with
+ * {@code student.ingest.enabled=true}. Students are accepted into a bounded
+ * queue and a single writer thread inserts them in batches through
+ * {@link StudentBatchWriter}, so one commit covers many requests while each
+ * request still gets its own outcome.
+ *
+ * <p>The writer takes up to {@code student.ingest.max-batch-size} students,
+ * waiting at most {@code student.ingest.linger-ms} after the first for more
+ * to arrive. When the queue is full new students are refused rather than
+ * waited for. Outcomes are kept for {@code student.ingest.status-retention}.
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "student.ingest.enabled", havingValue = "true")
+public class StudentIngestQueue implements MeterBinder {
+
+    private static final long POLL_TIMEOUT_MS = 100;
+
+    private final StudentBatchWriter studentBatchWriter;
+    private final BlockingQueue<Pending> queue;
+    private final int maxBatchSize;
+    private final long lingerNanos;
+    private final Cache<String, StudentIngestStatus> statuses;
+
+    private final LongAdder rejected = new LongAdder();
+    private final LongAdder written = new LongAdder();
+    private volatile DistributionSummary batchSizes;
+
+    private volatile boolean running;
+    private Thread writer;
+
+    public StudentIngestQueue(
+            StudentBatchWriter studentBatchWriter,
+            @Value("${student.ingest.capacity:10000}") int capacity,
+            @Value("${student.ingest.max-batch-size:500}") int maxBatchSize,
+            @Value("${student.ingest.linger-ms:10}") long lingerMs,
+            @Value("${student.ingest.status-retention:10m}") Duration statusRetention) {
+        this.studentBatchWriter = studentBatchWriter;
+        this.queue = new ArrayBlockingQueue<>(capacity);
+        this.maxBatchSize = Math.min(maxBatchSize, StudentService.MAX_BATCH_SIZE);
+        this.lingerNanos = TimeUnit.MILLISECONDS.toNanos(lingerMs);
+        this.statuses = Caffeine.newBuilder()
+                .expireAfterWrite(statusRetention)
+                .maximumSize(capacity * 10L)
+                .build();
+    }
+
+    /**
+     * @return the pending status, carrying the tracking id
+     * @throws TooManyRequestsException    if the queue is full
+     * @throws ServiceUnavailableException if the writer has stopped
+     */
+    public StudentIngestStatus submit(Student student) {
+        if (!running) {
+            throw new ServiceUnavailableException("Student ingest is not running");
+        }
+        String trackingId = UUID.randomUUID().toString();
+        StudentIngestStatus pending = StudentIngestStatus.pending(trackingId);
+        statuses.put(trackingId, pending);
+        if (!queue.offer(new Pending(trackingId, student))) {
+            statuses.invalidate(trackingId);
+            rejected.increment();
+            throw new TooManyRequestsException("Student ingest queue is full");
+        }
+        return pending;
+    }
+
+    public Optional<StudentIngestStatus> getStatus(String trackingId) {
+        return Optional.ofNullable(statuses.getIfPresent(trackingId));
+    }
+
+    @PostConstruct
+    public void start() {
+        running = true;
+        writer = new Thread(this::drain, "student-ingest");
+        writer.start();
+    }
+
+    /**
+     * Stops accepting students and waits for the writer to empty the queue.
+     */
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        running = false;
+        if (writer != null) {
+            writer.join();
+        }
+    }
+
+    private void drain() {
+        List<Pending> batch = new ArrayList<>(maxBatchSize);
+        while (running || !queue.isEmpty()) {
+            try {
+                Pending first = queue.poll(POLL_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                queue.drainTo(batch, maxBatchSize - batch.size());
+                long deadline = System.nanoTime() + lingerNanos;
+                while (batch.size() < maxBatchSize) {
+                    Pending next = queue.poll(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+                    if (next == null) {
+                        break;
+                    }
+                    batch.add(next);
+                    queue.drainTo(batch, maxBatchSize - batch.size());
+                }
+                write(batch);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            } finally {
+                batch.clear();
+            }
+        }
+        // only left behind when interrupted
+        List<Pending> abandoned = new ArrayList<>();
+        queue.drainTo(abandoned);
+        abandoned.forEach(pending -> statuses.put(pending.trackingId,
+                StudentIngestStatus.failed(pending.trackingId, "Student ingest stopped")));
+    }
+
+    private void write(List<Pending> batch) {
+        List<Student> students = new ArrayList<>(batch.size());
+        batch.forEach(pending -> students.add(pending.student));
+        try {
+            List<StudentBatchResult> results = studentBatchWriter.write(students);
+            for (int i = 0; i < batch.size(); i++) {
+                String trackingId = batch.get(i).trackingId;
+                statuses.put(trackingId, StudentIngestStatus.of(trackingId, results.get(i)));
+            }
+        } catch (RuntimeException e) {
+            log.warn("Could not write {} students", batch.size(), e);
+            batch.forEach(pending -> statuses.put(pending.trackingId,
+                    StudentIngestStatus.failed(pending.trackingId, e.getMessage())));
+        }
+        written.add(batch.size());
+        DistributionSummary summary = batchSizes;
+        if (summary != null) {
+            summary.record(batch.size());
+        }
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        Gauge.builder("student.ingest.queue.size", queue, BlockingQueue::size)
+                .description("Students waiting to be written")
+                .register(registry);
+        FunctionCounter.builder("student.ingest.rejected", rejected, LongAdder::sum)
+                .description("Students refused because the queue was full")
+                .register(registry);
+        FunctionCounter.builder("student.ingest.written", written, LongAdder::sum)
+                .description("Students handed to the database, whatever the outcome")
+                .register(registry);
+        batchSizes = DistributionSummary.builder("student.ingest.batch.size")
+                .description("Students written per commit")
+                .register(registry);
+    }
+
+    private static final class Pending {
+        private final String trackingId;
+        private final Student student;
+
+        private Pending(String trackingId, Student student) {
+            this.trackingId = trackingId;
+            this.student = student;
+        }
+    }
+}
@@ -0,0 +1,43 @@
+package com.example.demo.student;
+
+import lombok.AllArgsConstructor;
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+import lombok.ToString;
+
+/**
+ * Outcome of a student accepted by {@link StudentIngestQueue}, looked up by
+ * its tracking id.
+ */
+@ToString
+@Getter
+@EqualsAndHashCode
+@AllArgsConstructor
+public class StudentIngestStatus {
+
+    public enum State {
+        PENDING,
+        CREATED,
+        INVALID,
+        EMAIL_TAKEN,
+        FAILED
+    }
+
+    private final String trackingId;
+    private final State state;
+    private final Long id;
+    private final String message;
+
+    public static StudentIngestStatus pending(String trackingId) {
+        return new StudentIngestStatus(trackingId, State.PENDING, null, null);
+    }
+
+    public static StudentIngestStatus of(String trackingId, StudentBatchResult result) {
+        return new StudentIngestStatus(
+                trackingId, State.valueOf(result.getStatus().name()), result.getId(), result.getMessage());
+    }
+
+    public static StudentIngestStatus failed(String trackingId, String message) {
+        return new StudentIngestStatus(trackingId, State.FAILED, null, message);
+    }
+}
@@ -0,0 +1,145 @@
+package com.example.demo.student;
+
+import com.example.demo.config.ReplicaRoutingDataSource;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.google.common.hash.Hashing;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.LongSupplier;
+import java.util.function.Supplier;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * The list of all students as serialized JSON, plain and gzip compressed,
+ * kept until the next write through {@link StudentService} bumps the
+ * collection version.
+ *
+ * <p>Writes made elsewhere, by another instance or straight to the database,
+ * do not bump the version, so a body is also rebuilt once it is older than
+ * {@code student.list-cache.max-age}. The ETag is derived from the content,
+ * so a rebuild that finds nothing changed keeps answering 304.
+ */
+@Component
+public class StudentListCache {
+
+    private final AtomicLong version = new AtomicLong();
+    private final ReentrantLock rebuildLock = new ReentrantLock();
+    private final ObjectWriter writer;
+    private final long maxAgeNanos;
+    private final LongSupplier nanoTime;
+    private volatile Body body;
+
+    @Autowired
+    public StudentListCache(
+            ObjectMapper objectMapper,
+            @Value("${student.list-cache.max-age:30s}") Duration maxAge) {
+        this(objectMapper, maxAge, System::nanoTime);
+    }
+
+    StudentListCache(ObjectMapper objectMapper, Duration maxAge, LongSupplier nanoTime) {
+        this.writer = objectMapper.writerFor(new TypeReference<List<Student>>() {
+        });
+        this.maxAgeNanos = maxAge.toNanos();
+        this.nanoTime = nanoTime;
+    }
+
+    /**
+     * Bumps the collection version once the surrounding transaction, if any,
+     * has committed. Bumping earlier would let a concurrent read cache the
+     * list from before the write under the new version.
+     */
+    public void recordChange() {
+        AfterCommit.run(version::incrementAndGet);
+    }
+
+    public long getVersion() {
+        return version.get();
+    }
+
+    /**
+     * Returns the cached body, first loading and serializing the students if
+     * the version moved on or the body is too old. Concurrent callers wait for
+     * a single rebuild.
+     */
+    public Body get(Supplier<List<Student>> loader) {
+        Body current = body;
+        if (isFresh(current)) {
+            return current;
+        }
+        // a lock rather than a monitor: the load blocks on the database, and
+        // a virtual thread blocked inside synchronized pins its carrier
+        rebuildLock.lock();
+        try {
+            current = body;
+            if (isFresh(current)) {
+                return current;
+            }
+            // read before loading: a write committing meanwhile leaves the
+            // body under the older version, to be rebuilt on the next call
+            long loadedVersion = version.get();
+            // shared by every client, so never from a replica behind some client's write
+            byte[] json = serialize(ReplicaRoutingDataSource.onPrimary(loader));
+            Body next = new Body(loadedVersion, nanoTime.getAsLong(), json, gzip(json), eTag(json));
+            body = next;
+            return next;
+        } finally {
+            rebuildLock.unlock();
+        }
+    }
+
+    private boolean isFresh(Body current) {
+        return current != null
+                && current.version == version.get()
+                && nanoTime.getAsLong() - current.builtAt < maxAgeNanos;
+    }
+
+    private byte[] serialize(List<Student> students) {
+        try {
+            return writer.writeValueAsBytes(students);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Cannot serialize students", e);
+        }
+    }
+
+    private static byte[] gzip(byte[] json) {
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream(json.length / 4 + 64);
+        try (GZIPOutputStream out = new GZIPOutputStream(compressed)) {
+            out.write(json);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return compressed.toByteArray();
+    }
+
+    /**
+     * Weak, as the same tag covers the plain and the gzip encoding.
+     */
+    @SuppressWarnings("UnstableApiUsage")
+    private static String eTag(byte[] json) {
+        return "W/\"" + Hashing.murmur3_128().hashBytes(json) + "\"";
+    }
+
+    @Getter
+    @AllArgsConstructor
+    public static final class Body {
+        private final long version;
+        private final long builtAt;
+        private final byte[] json;
+        private final byte[] gzip;
+        private final String eTag;
+    }
+}
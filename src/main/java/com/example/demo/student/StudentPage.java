@@ -0,0 +1,20 @@
+package com.example.demo.student;
+
+import lombok.AllArgsConstructor;
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+import lombok.ToString;
+
+import java.util.List;
+
+@ToString
+@Getter
+@EqualsAndHashCode
+@AllArgsConstructor
+public class StudentPage {
+    private final List<Student> students;
+    /**
+     * Cursor for the next page, or {@code null} when this is the last page.
+     */
+    private final String nextCursor;
+}
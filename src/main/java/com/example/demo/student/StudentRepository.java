@@ -1,12 +1,48 @@
 package com.example.demo.student;
 
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import javax.persistence.QueryHint;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+import java.util.stream.Stream;
+
+import static org.hibernate.jpa.QueryHints.HINT_FETCH_SIZE;
+import static org.hibernate.jpa.QueryHints.HINT_FLUSH_MODE;
+import static org.hibernate.jpa.QueryHints.HINT_READONLY;
 
 @Repository
 public interface StudentRepository
-        extends JpaRepository<Student, Long> {
+        extends JpaRepository<Student, Long>, StudentSearchRepository {
+    int STREAM_FETCH_SIZE = 500;
+    /**
+     * Selects students as plain objects rather than managed entities: nothing
+     * is registered with the persistence context, snapshotted or dirty
+     * checked, which is all a read that only serializes them needs. Queries
+     * using it also skip the flush before running, so they do not see
+     * unflushed changes made earlier in the same transaction.
+     */
+    String UNMANAGED_STUDENT = "new com.example.demo.student.Student(s.id, s.name, s.email, s.gender, s.version)";
+
+    interface GenderCount {
+        Gender getKey();
+
+        long getTotal();
+    }
+
+    interface EmailDomainCount {
+        String getKey();
+
+        long getTotal();
+    }
+
     @Query("" +
             "SELECT CASE WHEN COUNT(s) > 0 THEN " +
             "TRUE ELSE FALSE END " +
@@ -22,4 +58,163 @@ public interface StudentRepository
             "WHERE s.email = ?1 and id != ?2"
     )
     Boolean selectConflictEmail(String email, Long id);
+
+    /**
+     * The student holding this email, which tells a conflict apart from an
+     * email kept unchanged in one query.
+     */
+    @Query("" +
+            "SELECT s.id FROM Student s " +
+            "WHERE s.email = ?1"
+    )
+    Optional<Long> selectIdByEmail(String email);
+
+    /**
+     * Compares under the email column's collation, so the lookup can probe
+     * the unique email index.
+     */
+    @Query("" +
+            "SELECT s.email FROM Student s " +
+            "WHERE s.email IN ?1"
+    )
+    List<String> selectExistingEmails(Collection<String> emails);
+
+    @Transactional
+    @Modifying(clearAutomatically = true)
+    @Query("" +
+            "UPDATE Student s " +
+            "SET s.name = ?2, s.email = ?3, s.gender = ?4, " +
+            "s.emailDomain = LOWER(SUBSTRING(?3, LOCATE('@', ?3) + 1)), " +
+            "s.version = COALESCE(s.version, 0) + 1 " +
+            "WHERE s.id = ?1"
+    )
+    int updateStudent(Long id, String name, String email, Gender gender);
+
+    @Transactional
+    @Modifying(clearAutomatically = true)
+    @Query("" +
+            "UPDATE Student s " +
+            "SET s.name = ?2, s.email = ?3, s.gender = ?4, " +
+            "s.emailDomain = LOWER(SUBSTRING(?3, LOCATE('@', ?3) + 1)), " +
+            "s.version = COALESCE(s.version, 0) + 1 " +
+            "WHERE s.id = ?1 and COALESCE(s.version, 0) = ?5"
+    )
+    int updateStudentIfVersion(Long id, String name, String email, Gender gender, Long version);
+
+    @Transactional
+    @Modifying(clearAutomatically = true)
+    @Query("" +
+            "DELETE FROM Student s " +
+            "WHERE s.id = ?1"
+    )
+    int deleteStudentById(Long id);
+
+    @Transactional
+    @Modifying(clearAutomatically = true)
+    @Query("" +
+            "DELETE FROM Student s " +
+            "WHERE s.id = ?1 and COALESCE(s.version, 0) = ?2"
+    )
+    int deleteStudentByIdIfVersion(Long id, Long version);
+
+    /**
+     * Fills in the email domain of rows written before the column existed.
+     */
+    @Transactional
+    @Modifying
+    @Query("" +
+            "UPDATE Student s " +
+            "SET s.emailDomain = LOWER(SUBSTRING(s.email, LOCATE('@', s.email) + 1)) " +
+            "WHERE s.emailDomain IS NULL"
+    )
+    int backfillEmailDomains();
+
+    @QueryHints(@QueryHint(name = HINT_FLUSH_MODE, value = "MANUAL"))
+    @Query("" +
+            "SELECT " + UNMANAGED_STUDENT + " FROM Student s"
+    )
+    List<Student> selectAll();
+
+    /**
+     * Read-only, so that with replicas configured it is served by one, also
+     * when called outside a transaction, unless the caller asks for the
+     * primary.
+     */
+    @Transactional(readOnly = true)
+    @QueryHints(@QueryHint(name = HINT_FLUSH_MODE, value = "MANUAL"))
+    @Query("" +
+            "SELECT " + UNMANAGED_STUDENT + " FROM Student s " +
+            "WHERE s.id = ?1"
+    )
+    Optional<Student> selectById(Long id);
+
+    @QueryHints(@QueryHint(name = HINT_FLUSH_MODE, value = "MANUAL"))
+    @Query("" +
+            "SELECT " + UNMANAGED_STUDENT + " FROM Student s " +
+            "WHERE s.id IN ?1"
+    )
+    List<Student> selectByIds(Collection<Long> ids);
+
+    @Query("" +
+            "SELECT s.id FROM Student s " +
+            "WHERE s.id IN ?1"
+    )
+    List<Long> selectExistingIds(Collection<Long> ids);
+
+    @Transactional
+    @Modifying(clearAutomatically = true)
+    @Query("" +
+            "DELETE FROM Student s " +
+            "WHERE s.id IN ?1"
+    )
+    int deleteStudentsByIds(Collection<Long> ids);
+
+    @QueryHints(@QueryHint(name = HINT_FLUSH_MODE, value = "MANUAL"))
+    @Query("" +
+            "SELECT " + UNMANAGED_STUDENT + " FROM Student s " +
+            "WHERE s.id > ?1 " +
+            "ORDER BY s.id"
+    )
+    List<Student> selectPageAfter(Long afterId, Pageable pageable);
+
+    @QueryHints(@QueryHint(name = HINT_FLUSH_MODE, value = "MANUAL"))
+    @Query("" +
+            "SELECT " + UNMANAGED_STUDENT + " FROM Student s " +
+            "WHERE s.gender = ?2 and s.id > ?1 " +
+            "ORDER BY s.id"
+    )
+    List<Student> selectPageAfterByGender(Long afterId, Gender gender, Pageable pageable);
+
+    @QueryHints({
+            @QueryHint(name = HINT_FETCH_SIZE, value = "" + STREAM_FETCH_SIZE),
+            @QueryHint(name = HINT_READONLY, value = "true")
+    })
+    @Query("" +
+            "SELECT s FROM Student s " +
+            "ORDER BY s.id"
+    )
+    Stream<Student> streamAll();
+
+    @QueryHints({
+            @QueryHint(name = HINT_FETCH_SIZE, value = "" + STREAM_FETCH_SIZE),
+            @QueryHint(name = HINT_READONLY, value = "true")
+    })
+    @Query("" +
+            "SELECT s.email FROM Student s"
+    )
+    Stream<String> streamAllEmails();
+
+    @Query("" +
+            "SELECT s.gender AS key, COUNT(s) AS total " +
+            "FROM Student s " +
+            "GROUP BY s.gender"
+    )
+    List<GenderCount> countByGender();
+
+    @Query("" +
+            "SELECT s.emailDomain AS key, COUNT(s) AS total " +
+            "FROM Student s " +
+            "GROUP BY s.emailDomain"
+    )
+    List<EmailDomainCount> countByEmailDomain();
 }
@@ -0,0 +1,17 @@
+package com.example.demo.student;
+
+import java.util.List;
+
+/**
+ * Search queries whose filters are all optional, built per call so that each
+ * combination is a plain query the database can answer from an index.
+ */
+public interface StudentSearchRepository {
+
+    /**
+     * @param namePrefix  name the students' names start with, or {@code null}
+     * @param gender      gender of the students, or {@code null}
+     * @param emailDomain lowercased email domain, or {@code null}
+     */
+    List<StudentSummary> search(String namePrefix, Gender gender, String emailDomain, int limit);
+}
@@ -0,0 +1,62 @@
+package com.example.demo.student;
+
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+import javax.persistence.TypedQuery;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.hibernate.jpa.QueryHints.HINT_FLUSH_MODE;
+
+class StudentSearchRepositoryImpl implements StudentSearchRepository {
+
+    private static final char LIKE_ESCAPE = '!';
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    @Override
+    public List<StudentSummary> search(String namePrefix, Gender gender, String emailDomain, int limit) {
+        List<String> conditions = new ArrayList<>();
+        if (namePrefix != null) {
+            conditions.add("s.name LIKE :namePrefix ESCAPE '" + LIKE_ESCAPE + "'");
+        }
+        if (gender != null) {
+            conditions.add("s.gender = :gender");
+        }
+        if (emailDomain != null) {
+            conditions.add("s.emailDomain = :emailDomain");
+        }
+
+        String jpql = "" +
+                "SELECT new com.example.demo.student.StudentSummary(s.id, s.name, s.email, s.gender) " +
+                "FROM Student s" +
+                (conditions.isEmpty() ? "" : " WHERE " + String.join(" and ", conditions)) +
+                // follows the name index for prefix searches, the id otherwise
+                (namePrefix != null ? " ORDER BY s.name, s.id" : " ORDER BY s.id");
+        TypedQuery<StudentSummary> query = entityManager.createQuery(jpql, StudentSummary.class)
+                .setHint(HINT_FLUSH_MODE, "MANUAL")
+                .setMaxResults(limit);
+        if (namePrefix != null) {
+            query.setParameter("namePrefix", escapeLike(namePrefix) + "%");
+        }
+        if (gender != null) {
+            query.setParameter("gender", gender);
+        }
+        if (emailDomain != null) {
+            query.setParameter("emailDomain", emailDomain);
+        }
+        return query.getResultList();
+    }
+
+    private static String escapeLike(String value) {
+        StringBuilder escaped = new StringBuilder(value.length());
+        for (char c : value.toCharArray()) {
+            if (c == LIKE_ESCAPE || c == '%' || c == '_') {
+                escaped.append(LIKE_ESCAPE);
+            }
+            escaped.append(c);
+        }
+        return escaped.toString();
+    }
+}
@@ -1,59 +1,434 @@
 package com.example.demo.student;
 
+import com.example.demo.config.ReplicaRoutingDataSource;
 import com.example.demo.student.exception.BadRequestException;
+import com.example.demo.student.exception.PreconditionFailedException;
 import com.example.demo.student.exception.StudentNotFoundException;
 import lombok.AllArgsConstructor;
 import org.jetbrains.annotations.NotNull;
+import org.springframework.cache.CacheManager;
+import org.springframework.cache.annotation.CacheEvict;
+import org.springframework.cache.annotation.Cacheable;
+import org.springframework.cache.support.NoOpCache;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.http.HttpStatus;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 import org.springframework.web.bind.annotation.ResponseStatus;
 
-import java.util.List;
-import java.util.Optional;
+import javax.persistence.EntityManager;
+import javax.validation.ConstraintViolation;
+import javax.validation.Validator;
+import java.util.*;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 @AllArgsConstructor
 @Service
 public class StudentService {
 
+    /**
+     * Students by id, configured through spring.cache.* (Caffeine by default).
+     */
+    public static final String STUDENT_CACHE = "students";
+    public static final int DEFAULT_PAGE_SIZE = 50;
+    public static final int MAX_PAGE_SIZE = 500;
+    public static final int MAX_BATCH_SIZE = 1000;
+    public static final int DEFAULT_SEARCH_LIMIT = 20;
+    public static final int MAX_SEARCH_LIMIT = 100;
+    /**
+     * Matches hibernate.jdbc.batch_size, so every flush sends full JDBC batches.
+     */
+    static final int FLUSH_SIZE = 50;
+    static final int EMAIL_LOOKUP_CHUNK_SIZE = 500;
+    static final int ID_LOOKUP_CHUNK_SIZE = 500;
+
     private final StudentRepository studentRepository;
+    private final EntityManager entityManager;
+    private final Validator validator;
+    private final StudentEmailFilter studentEmailFilter;
+    private final StudentStatistics studentStatistics;
+    private final StudentListCache studentListCache;
+    private final StudentChangeFeed studentChangeFeed;
+    private final CacheManager cacheManager;
 
+    /**
+     * Reads go through {@link StudentRepository#UNMANAGED_STUDENT} projections
+     * in read-only transactions, so Hibernate neither tracks the students nor
+     * flushes before or after the query.
+     */
+    @Transactional(readOnly = true)
     public List<Student> getAllStudents() {
-        return studentRepository.findAll();
+        return studentRepository.selectAll();
     }
 
-    public Student addStudent(@NotNull Student student) {
-        Boolean existsEmail = studentRepository
-                .selectExistsEmail(student.getEmail());
-        if (existsEmail) {
+    /**
+     * Returns one page of students ordered by id. Pages seek past the id
+     * carried by {@code cursor} rather than using an offset, so the cost of a
+     * page does not grow with how deep the client has paged.
+     */
+    @Transactional(readOnly = true)
+    public StudentPage getStudentPage(String cursor, int size, Gender gender) {
+        if (size < 1) {
+            throw new BadRequestException("Page size must be positive");
+        }
+        int pageSize = Math.min(size, MAX_PAGE_SIZE);
+        long afterId = StudentCursor.decode(cursor);
+
+        // fetch one extra row to know whether there is a next page
+        PageRequest limit = PageRequest.of(0, pageSize + 1);
+        List<Student> students = gender == null
+                ? studentRepository.selectPageAfter(afterId, limit)
+                : studentRepository.selectPageAfterByGender(afterId, gender, limit);
+
+        if (students.size() <= pageSize) {
+            return new StudentPage(students, null);
+        }
+        List<Student> page = new ArrayList<>(students.subList(0, pageSize));
+        return new StudentPage(page, StudentCursor.encode(page.get(pageSize - 1).getId()));
+    }
+
+    /**
+     * Finds at most {@code limit} students matching every given filter. At
+     * least one filter is required, and each is served by an index: names by
+     * prefix on the name index, gender on the gender index and the email
+     * domain on its own column.
+     */
+    @Transactional(readOnly = true)
+    public List<StudentSummary> searchStudents(String namePrefix, Gender gender, String emailDomain, int limit) {
+        if (limit < 1) {
+            throw new BadRequestException("Limit must be positive");
+        }
+        String name = namePrefix == null || namePrefix.isBlank() ? null : namePrefix;
+        String domain = emailDomain == null || emailDomain.isBlank()
+                ? null
+                : emailDomain.trim().toLowerCase(Locale.ROOT);
+        if (name == null && gender == null && domain == null) {
+            throw new BadRequestException("Search needs a name, gender or emailDomain");
+        }
+        return studentRepository.search(name, gender, domain, Math.min(limit, MAX_SEARCH_LIMIT));
+    }
+
+    /**
+     * Looks up many students with one IN query per chunk of ids. Students are
+     * returned in the order their ids were given; ids matching no student are
+     * left out.
+     */
+    @Transactional(readOnly = true)
+    public List<Student> getStudentsByIds(@NotNull List<Long> ids) {
+        List<Long> unique = distinctIds(ids);
+        Map<Long, Student> found = new HashMap<>();
+        for (int from = 0; from < unique.size(); from += ID_LOOKUP_CHUNK_SIZE) {
+            List<Long> chunk = unique.subList(from, Math.min(from + ID_LOOKUP_CHUNK_SIZE, unique.size()));
+            studentRepository.selectByIds(chunk).forEach(student -> found.put(student.getId(), student));
+        }
+        return unique.stream()
+                .map(found::get)
+                .filter(Objects::nonNull)
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * Deletes many students with one set-based DELETE per chunk of ids,
+     * reporting the ids that matched no student. Clears the whole student
+     * cache rather than evicting the ids one by one.
+     */
+    @Transactional
+    @CacheEvict(cacheNames = STUDENT_CACHE, allEntries = true)
+    public StudentDeleteResult deleteStudents(@NotNull List<Long> ids) {
+        List<Long> unique = distinctIds(ids);
+        Set<Long> existing = new HashSet<>();
+        int deleted = 0;
+        for (int from = 0; from < unique.size(); from += ID_LOOKUP_CHUNK_SIZE) {
+            List<Long> chunk = unique.subList(from, Math.min(from + ID_LOOKUP_CHUNK_SIZE, unique.size()));
+            List<Long> found = studentRepository.selectExistingIds(chunk);
+            if (!found.isEmpty()) {
+                existing.addAll(found);
+                deleted += studentRepository.deleteStudentsByIds(found);
+                found.forEach(studentChangeFeed::recordDeleted);
+            }
+        }
+        for (int i = 0; i < deleted; i++) {
+            studentEmailFilter.recordRemoval();
+            studentStatistics.recordChanged();
+        }
+        if (deleted > 0) {
+            studentListCache.recordChange();
+        }
+        List<Long> missing = unique.stream()
+                .filter(id -> !existing.contains(id))
+                .collect(Collectors.toList());
+        return new StudentDeleteResult(deleted, missing);
+    }
+
+    private static List<Long> distinctIds(List<Long> ids) {
+        if (ids.size() > MAX_BATCH_SIZE) {
             throw new BadRequestException(
-                    "Email " + student.getEmail() + " taken");
+                    "Batch size " + ids.size() + " exceeds " + MAX_BATCH_SIZE);
+        }
+        if (ids.stream().anyMatch(Objects::isNull)) {
+            throw new BadRequestException("Ids must not be null");
+        }
+        return new ArrayList<>(new LinkedHashSet<>(ids));
+    }
+
+    /**
+     * Counts from memory, without a query.
+     */
+    public StudentStats getStudentStats() {
+        return studentStatistics.getStats();
+    }
+
+    /**
+     * Hands every student, in id order, to {@code sink} while reading them from
+     * a database cursor. Each student is detached once consumed, so the
+     * persistence context never holds more than the current row.
+     */
+    @Transactional(readOnly = true)
+    public void exportStudents(Consumer<Student> sink) {
+        try (Stream<Student> students = studentRepository.streamAll()) {
+            students.forEach(student -> {
+                sink.accept(student);
+                entityManager.detach(student);
+            });
         }
+    }
 
-        studentRepository.save(student);
+    /**
+     * Inserts the student without checking the email first: the unique
+     * constraint on the email column decides, which keeps the common case to
+     * a single INSERT and stays correct when the same email is added
+     * concurrently.
+     */
+    @CacheEvict(cacheNames = STUDENT_CACHE, key = "#result.id")
+    public Student addStudent(@NotNull Student student) {
+        // ids are assigned here, never taken from the client
+        student.setId(null);
+        try {
+            studentRepository.saveAndFlush(student);
+        } catch (DataIntegrityViolationException e) {
+            // only pay for the lookup when the insert already failed
+            if (studentRepository.selectExistsEmail(student.getEmail())) {
+                throw new BadRequestException(
+                        "Email " + student.getEmail() + " taken");
+            }
+            throw e;
+        }
+        studentEmailFilter.add(student.getEmail());
+        studentStatistics.recordAdded(student);
+        studentListCache.recordChange();
+        studentChangeFeed.recordCreated(student);
         return student;
     }
 
-    public Student saveEditStudent(@NotNull Student student, Long studentId) {
-        Boolean existsEmailConflict = studentRepository
-                .selectConflictEmail(student.getEmail(), studentId);
-        if (existsEmailConflict) {
+    /**
+     * Creates many students in one transaction. Items failing validation or
+     * whose email is already taken (in the database or earlier in the same
+     * batch) are reported and skipped; the rest are inserted using JDBC
+     * batching. Email conflicts are resolved with set-based lookups rather
+     * than one query per student.
+     */
+    @Transactional
+    public List<StudentBatchResult> addStudents(@NotNull List<Student> students) {
+        if (students.size() > MAX_BATCH_SIZE) {
             throw new BadRequestException(
-                    "Email " + student.getEmail() + " conflict");
+                    "Batch size " + students.size() + " exceeds " + MAX_BATCH_SIZE);
+        }
+
+        StudentBatchResult[] results = new StudentBatchResult[students.size()];
+        Map<String, Integer> candidates = new LinkedHashMap<>();
+        for (int i = 0; i < students.size(); i++) {
+            Student student = students.get(i);
+            Set<ConstraintViolation<Student>> violations = validator.validate(student);
+            if (!violations.isEmpty()) {
+                results[i] = StudentBatchResult.invalid(i, describe(violations));
+            } else if (candidates.putIfAbsent(normalizeEmail(student.getEmail()), i) != null) {
+                results[i] = StudentBatchResult.emailTaken(i, student.getEmail());
+            }
         }
 
-        studentRepository.save(student);
+        List<String> emails = candidates.values().stream()
+                .map(i -> students.get(i).getEmail())
+                .filter(studentEmailFilter::mightContain)
+                .collect(Collectors.toList());
+        for (String taken : selectExistingEmails(emails)) {
+            Integer i = candidates.remove(normalizeEmail(taken));
+            if (i != null) {
+                results[i] = StudentBatchResult.emailTaken(i, students.get(i).getEmail());
+            }
+        }
+
+        int pending = 0;
+        for (int i : candidates.values()) {
+            Student student = students.get(i);
+            student.setId(null);
+            entityManager.persist(student);
+            studentEmailFilter.add(student.getEmail());
+            studentStatistics.recordAdded(student);
+            studentChangeFeed.recordCreated(student);
+            results[i] = StudentBatchResult.created(i, student.getId());
+            if (++pending % FLUSH_SIZE == 0) {
+                // through the repository, which translates a constraint
+                // violation into a DataIntegrityViolationException
+                studentRepository.flush();
+                entityManager.clear();
+            }
+        }
+        if (pending > 0) {
+            studentListCache.recordChange();
+        }
+        return Arrays.asList(results);
+    }
+
+    private List<String> selectExistingEmails(List<String> all) {
+        List<String> existing = new ArrayList<>();
+        for (int from = 0; from < all.size(); from += EMAIL_LOOKUP_CHUNK_SIZE) {
+            List<String> chunk = all.subList(from, Math.min(from + EMAIL_LOOKUP_CHUNK_SIZE, all.size()));
+            existing.addAll(studentRepository.selectExistingEmails(chunk));
+        }
+        return existing;
+    }
+
+    /**
+     * Databases differ in whether the unique email index is case sensitive.
+     * Within a batch, emails are compared case-insensitively to stay on the
+     * safe side, as a second insert rejected by the index would fail the
+     * whole batch. Against the database the column's collation decides, and
+     * the emails it reports taken are matched back to the batch through this.
+     */
+    private static String normalizeEmail(String email) {
+        return email.toLowerCase(Locale.ROOT);
+    }
+
+    private static String describe(Set<ConstraintViolation<Student>> violations) {
+        return violations.stream()
+                .map(v -> v.getPropertyPath() + " " + v.getMessage())
+                .sorted()
+                .collect(Collectors.joining(", "));
+    }
+
+    @CacheEvict(cacheNames = STUDENT_CACHE, key = "#studentId")
+    public Student saveEditStudent(@NotNull Student student, Long studentId) {
+        return saveEditStudent(student, studentId, null);
+    }
+
+    /**
+     * Updates the student with one UPDATE statement, preceded by a lookup of
+     * who holds the email only when the email filter cannot rule out a
+     * conflict. The lookup also tells whether the student kept its email, in
+     * which case the filter neither counts a false positive nor a removal.
+     *
+     * @param expectedVersion version the student must still have, or
+     *                        {@code null} to update whatever the version
+     * @return the student, carrying its new version when it is known
+     * @throws StudentNotFoundException    if no student has this id
+     * @throws PreconditionFailedException if the student has another version
+     */
+    @CacheEvict(cacheNames = STUDENT_CACHE, key = "#studentId")
+    public Student saveEditStudent(@NotNull Student student, Long studentId, Long expectedVersion) {
+        boolean emailChanged = true;
+        if (studentEmailFilter.mightContain(student.getEmail())) {
+            Optional<Long> holder = studentRepository.selectIdByEmail(student.getEmail());
+            if (holder.isEmpty()) {
+                studentEmailFilter.recordUnconfirmed();
+            } else if (holder.get().equals(studentId)) {
+                emailChanged = false;
+            } else {
+                throw emailConflict(student);
+            }
+        }
+
+        int updated;
+        try {
+            updated = expectedVersion == null
+                    ? studentRepository.updateStudent(
+                            studentId, student.getName(), student.getEmail(), student.getGender())
+                    : studentRepository.updateStudentIfVersion(
+                            studentId, student.getName(), student.getEmail(), student.getGender(),
+                            expectedVersion);
+        } catch (DataIntegrityViolationException e) {
+            // the email was taken after the check above
+            if (studentRepository.selectConflictEmail(student.getEmail(), studentId)) {
+                throw emailConflict(student);
+            }
+            throw e;
+        }
+        if (updated == 0) {
+            throw notFoundOrModified(studentId, expectedVersion);
+        }
+        student.setId(studentId);
+        student.setVersion(expectedVersion == null ? null : expectedVersion + 1);
+        if (emailChanged) {
+            // the previous email may now be unused
+            studentEmailFilter.recordRemoval();
+            studentEmailFilter.add(student.getEmail());
+        }
+        studentStatistics.recordChanged();
+        studentListCache.recordChange();
+        studentChangeFeed.recordUpdated(student);
         return student;
     }
 
+    @CacheEvict(cacheNames = STUDENT_CACHE, key = "#studentId")
     public void deleteStudent(Long studentId) {
-        if(!studentRepository.existsById(studentId)) {
-            throw new StudentNotFoundException(
-                    "Student with id " + studentId + " does not exists");
+        deleteStudent(studentId, null);
+    }
+
+    /**
+     * @param expectedVersion version the student must still have, or
+     *                        {@code null} to delete whatever the version
+     */
+    @CacheEvict(cacheNames = STUDENT_CACHE, key = "#studentId")
+    public void deleteStudent(Long studentId, Long expectedVersion) {
+        int deleted = expectedVersion == null
+                ? studentRepository.deleteStudentById(studentId)
+                : studentRepository.deleteStudentByIdIfVersion(studentId, expectedVersion);
+        if (deleted == 0) {
+            throw notFoundOrModified(studentId, expectedVersion);
         }
-        studentRepository.deleteById(studentId);
+        studentEmailFilter.recordRemoval();
+        studentStatistics.recordChanged();
+        studentListCache.recordChange();
+        studentChangeFeed.recordDeleted(studentId);
     }
 
+    /**
+     * Tells apart, only once a conditional write has failed, whether the
+     * student is gone or has another version.
+     */
+    private RuntimeException notFoundOrModified(Long studentId, Long expectedVersion) {
+        if (expectedVersion != null && studentRepository.existsById(studentId)) {
+            return new PreconditionFailedException(
+                    "Student with id " + studentId + " is not at version " + expectedVersion);
+        }
+        return notFound(studentId);
+    }
+
+    private static BadRequestException emailConflict(Student student) {
+        return new BadRequestException(
+                "Email " + student.getEmail() + " conflict");
+    }
+
+    private static StudentNotFoundException notFound(Long studentId) {
+        return new StudentNotFoundException(
+                "Student with id " + studentId + " does not exists");
+    }
+
+    /**
+     * Not transactional on purpose: a cache hit should not begin a transaction
+     * and take a connection. The single query runs in the repository's
+     * read-only transaction. While the student cache is on, it runs on the
+     * primary: the cache is shared by every client, and a replica lagging
+     * behind a write would have it keep the student from before. With
+     * {@code spring.cache.type=none} nothing is kept, so a replica serves it.
+     */
+    @Cacheable(cacheNames = STUDENT_CACHE, unless = "#result == null")
     public Optional<Student> getStudentById(Long id) {
-        return studentRepository.findById(id);
+        if (cacheManager.getCache(STUDENT_CACHE) instanceof NoOpCache) {
+            return studentRepository.selectById(id);
+        }
+        return ReplicaRoutingDataSource.onPrimary(() -> studentRepository.selectById(id));
     }
 }
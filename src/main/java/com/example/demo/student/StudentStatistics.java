@@ -0,0 +1,215 @@
+package com.example.demo.student;
+
+import com.example.demo.config.ReplicaRoutingDataSource;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Student counts per gender and per email domain, kept in memory so they can
+ * be read without a query.
+ *
+ * <p>New students are counted as they are committed. Updates and deletes are
+ * written without reading the old row, so their effect on the counts is not
+ * known; they are only counted as changes, and the counts are recomputed
+ * with {@code GROUP BY} queries soon after, within
+ * {@code student.stats.check-interval-ms}. Counts are also recomputed every
+ * {@code student.stats.reconcile-interval} regardless, to correct any drift.
+ */
+@Slf4j
+@Component
+public class StudentStatistics {
+
+    private final StudentRepository studentRepository;
+    private final Duration reconcileInterval;
+    private final Clock clock;
+
+    // writers count under the read lock, a reconcile swaps under the write lock
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private Counts live = new Counts();
+    private Counts journal;
+    private final LongAdder changes = new LongAdder();
+    private volatile Instant reconciledAt;
+
+    @Autowired
+    public StudentStatistics(
+            StudentRepository studentRepository,
+            @Value("${student.stats.reconcile-interval:5m}") Duration reconcileInterval) {
+        this(studentRepository, reconcileInterval, Clock.systemUTC());
+    }
+
+    StudentStatistics(StudentRepository studentRepository, Duration reconcileInterval, Clock clock) {
+        this.studentRepository = studentRepository;
+        this.reconcileInterval = reconcileInterval;
+        this.clock = clock;
+    }
+
+    /**
+     * Counts a new student once the surrounding transaction, if any, has
+     * committed.
+     */
+    public void recordAdded(Student student) {
+        Gender gender = student.getGender();
+        String domain = student.getEmailDomain();
+        AfterCommit.run(() -> count(gender, domain));
+    }
+
+    /**
+     * Records an update or delete, to be reflected by the next reconcile.
+     */
+    public void recordChanged() {
+        changes.increment();
+    }
+
+    public StudentStats getStats() {
+        lock.readLock().lock();
+        try {
+            return new StudentStats(
+                    live.total.sum(),
+                    snapshot(live.byGender),
+                    snapshot(live.byEmailDomain),
+                    reconciledAt,
+                    changes.sum());
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void warmUp() {
+        try {
+            reconcile();
+        } catch (RuntimeException e) {
+            log.warn("Could not count students, will retry", e);
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${student.stats.check-interval-ms:5000}",
+            initialDelayString = "${student.stats.check-interval-ms:5000}")
+    public void reconcileIfNeeded() {
+        Instant last = reconciledAt;
+        if (changes.sum() > 0 || last == null
+                || last.plus(reconcileInterval).isBefore(clock.instant())) {
+            reconcile();
+        }
+    }
+
+    /**
+     * Recomputes the counts from the database. Students committed while the
+     * queries run are journaled and added on top, so they are not lost.
+     */
+    public synchronized void reconcile() {
+        long seenChanges = changes.sum();
+        Instant started = clock.instant();
+        lock.writeLock().lock();
+        try {
+            journal = new Counts();
+        } finally {
+            lock.writeLock().unlock();
+        }
+
+        Counts fresh;
+        try {
+            // from the primary, a lagging replica would undo committed changes
+            fresh = ReplicaRoutingDataSource.onPrimary(this::load);
+        } catch (RuntimeException e) {
+            swap(null);
+            throw e;
+        }
+        swap(fresh);
+        changes.add(-seenChanges);
+        reconciledAt = started;
+    }
+
+    private Counts load() {
+        Counts counts = new Counts();
+        studentRepository.countByGender().forEach(row -> {
+            counts.byGender.computeIfAbsent(row.getKey(), key -> new LongAdder()).add(row.getTotal());
+            counts.total.add(row.getTotal());
+        });
+        studentRepository.countByEmailDomain().forEach(row -> {
+            if (row.getKey() != null) {
+                counts.byEmailDomain.computeIfAbsent(row.getKey(), key -> new LongAdder()).add(row.getTotal());
+            }
+        });
+        return counts;
+    }
+
+    /**
+     * Ends the journal, publishing {@code fresh} plus the journaled students
+     * unless the reconcile failed.
+     */
+    private void swap(Counts fresh) {
+        lock.writeLock().lock();
+        try {
+            if (fresh != null) {
+                fresh.addAll(journal);
+                live = fresh;
+            }
+            journal = null;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void count(Gender gender, String domain) {
+        lock.readLock().lock();
+        try {
+            live.add(gender, domain);
+            if (journal != null) {
+                journal.add(gender, domain);
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private static <K> Map<K, Long> snapshot(Map<K, LongAdder> counts) {
+        Map<K, Long> snapshot = new TreeMap<>();
+        counts.forEach((key, count) -> {
+            long value = count.sum();
+            if (value > 0) {
+                snapshot.put(key, value);
+            }
+        });
+        return snapshot;
+    }
+
+    private static final class Counts {
+        private final LongAdder total = new LongAdder();
+        private final Map<Gender, LongAdder> byGender = new ConcurrentHashMap<>();
+        private final Map<String, LongAdder> byEmailDomain = new ConcurrentHashMap<>();
+
+        private void add(Gender gender, String domain) {
+            total.increment();
+            if (gender != null) {
+                byGender.computeIfAbsent(gender, key -> new LongAdder()).increment();
+            }
+            if (domain != null) {
+                byEmailDomain.computeIfAbsent(domain, key -> new LongAdder()).increment();
+            }
+        }
+
+        private void addAll(Counts other) {
+            total.add(other.total.sum());
+            other.byGender.forEach((key, count) ->
+                    byGender.computeIfAbsent(key, k -> new LongAdder()).add(count.sum()));
+            other.byEmailDomain.forEach((key, count) ->
+                    byEmailDomain.computeIfAbsent(key, k -> new LongAdder()).add(count.sum()));
+        }
+    }
+}
@@ -0,0 +1,28 @@
+package com.example.demo.student;
+
+import lombok.AllArgsConstructor;
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+import lombok.ToString;
+
+import java.time.Instant;
+import java.util.Map;
+
+@ToString
+@Getter
+@EqualsAndHashCode
+@AllArgsConstructor
+public class StudentStats {
+    private final long total;
+    private final Map<Gender, Long> byGender;
+    private final Map<String, Long> byEmailDomain;
+    /**
+     * When the counts were last recomputed from the database, or
+     * {@code null} if they never were.
+     */
+    private final Instant reconciledAt;
+    /**
+     * Updates and deletes since then, which the counts do not reflect yet.
+     */
+    private final long unreconciledChanges;
+}
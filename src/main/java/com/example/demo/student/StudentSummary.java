@@ -0,0 +1,21 @@
+package com.example.demo.student;
+
+import lombok.AllArgsConstructor;
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+import lombok.ToString;
+
+/**
+ * Read-only view of a student, selected straight into this class by JPQL
+ * constructor expressions so no entity is loaded or tracked.
+ */
+@ToString
+@Getter
+@EqualsAndHashCode
+@AllArgsConstructor
+public class StudentSummary {
+    private final Long id;
+    private final String name;
+    private final String email;
+    private final Gender gender;
+}
@@ -0,0 +1,138 @@
+package com.example.demo.config;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.mock.web.MockFilterChain;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import javax.servlet.http.HttpServletResponse;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class AdaptiveConcurrencyLimitTest {
+
+    private static final long FAST = TimeUnit.MILLISECONDS.toNanos(10);
+    private static final long SLOW = TimeUnit.MILLISECONDS.toNanos(100);
+
+    @Test
+    void willRejectBeyondTheLimit() {
+        //given
+        AdaptiveConcurrencyLimit limit = new AdaptiveConcurrencyLimit("read", 2, 1, 10);
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        limit.bindTo(registry);
+
+        //when
+        int first = limit.tryAcquire();
+        int second = limit.tryAcquire();
+        int third = limit.tryAcquire();
+
+        //then
+        assertThat(first).isEqualTo(1);
+        assertThat(second).isEqualTo(2);
+        assertThat(third).isZero();
+        assertThat(registry.get("student.concurrency.in-flight").tag("budget", "read").gauge().value())
+                .isEqualTo(2);
+        assertThat(registry.get("student.concurrency.rejected").tag("budget", "read").functionCounter().count())
+                .isEqualTo(1);
+    }
+
+    @Test
+    void canGrowWhileLatencyHoldsUnderLoad() {
+        //given
+        AdaptiveConcurrencyLimit limit = new AdaptiveConcurrencyLimit("read", 10, 1, 100);
+
+        //when
+        for (int i = 0; i < 50; i++) {
+            saturate(limit, FAST);
+        }
+
+        //then
+        assertThat(limit.getLimit()).isGreaterThan(50);
+        assertThat(limit.getInFlight()).isZero();
+    }
+
+    @Test
+    void willShrinkWhenLatencyRises() {
+        //given
+        AdaptiveConcurrencyLimit limit = new AdaptiveConcurrencyLimit("read", 50, 5, 100);
+        for (int i = 0; i < 10; i++) {
+            limit.onSuccess(limit.tryAcquire(), FAST);
+        }
+
+        //when
+        for (int i = 0; i < 5; i++) {
+            saturate(limit, SLOW);
+        }
+
+        //then
+        assertThat(limit.getLimit()).isLessThan(25);
+    }
+
+    @Test
+    void willNotGrowWhileMostPermitsAreUnused() {
+        //given
+        AdaptiveConcurrencyLimit limit = new AdaptiveConcurrencyLimit("read", 10, 1, 100);
+
+        //when
+        for (int i = 0; i < 100; i++) {
+            limit.onSuccess(limit.tryAcquire(), FAST);
+        }
+
+        //then
+        assertThat(limit.getLimit()).isEqualTo(10);
+    }
+
+    @Test
+    void willBackOffOnDrops() {
+        //given
+        AdaptiveConcurrencyLimit limit = new AdaptiveConcurrencyLimit("write", 20, 5, 100);
+
+        //when
+        for (int i = 0; i < 20; i++) {
+            limit.tryAcquire();
+            limit.onDropped();
+        }
+
+        //then
+        assertThat(limit.getLimit()).isEqualTo(5);
+        assertThat(limit.getInFlight()).isZero();
+    }
+
+    @Test
+    void filterWillShedWithRetryAfterAndKeepReadsApartFromWrites() throws Exception {
+        //given
+        AdaptiveConcurrencyLimit readLimit = new AdaptiveConcurrencyLimit("read", 1, 1, 1);
+        AdaptiveConcurrencyLimit writeLimit = new AdaptiveConcurrencyLimit("write", 1, 1, 1);
+        AdaptiveConcurrencyLimitFilter filter = new AdaptiveConcurrencyLimitFilter(readLimit, writeLimit, 2);
+        readLimit.tryAcquire();
+
+        //when
+        MockHttpServletResponse read = new MockHttpServletResponse();
+        filter.doFilter(new MockHttpServletRequest("GET", "/api/v1/students"), read, new MockFilterChain());
+        MockHttpServletResponse write = new MockHttpServletResponse();
+        filter.doFilter(new MockHttpServletRequest("POST", "/api/v1/students"), write, new MockFilterChain());
+
+        //then
+        assertThat(read.getStatus()).isEqualTo(HttpServletResponse.SC_SERVICE_UNAVAILABLE);
+        assertThat(read.getHeader(HttpHeaders.RETRY_AFTER)).isEqualTo("2");
+        assertThat(write.getStatus()).isEqualTo(HttpServletResponse.SC_OK);
+        assertThat(writeLimit.getInFlight()).isZero();
+    }
+
+    /**
+     * Fills every permit, then hands them all back having taken {@code rttNanos}.
+     */
+    private static void saturate(AdaptiveConcurrencyLimit limit, long rttNanos) {
+        int permits = limit.getLimit();
+        int[] inFlight = new int[permits];
+        for (int i = 0; i < permits; i++) {
+            inFlight[i] = limit.tryAcquire();
+        }
+        for (int i = 0; i < permits; i++) {
+            limit.onSuccess(inFlight[i], rttNanos);
+        }
+    }
+}
@@ -0,0 +1,91 @@
+package com.example.demo.config;
+
+import com.example.demo.student.exception.ServiceUnavailableException;
+import org.aspectj.lang.ProceedingJoinPoint;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Mockito.mock;
+
+@ExtendWith(MockitoExtension.class)
+class DatabaseConcurrencyLimitTest {
+
+    @Mock
+    private ProceedingJoinPoint joinPoint;
+
+    @Test
+    void canProceedWhilePermitsAreAvailable() throws Throwable {
+        //given
+        VirtualThreadConfig.DatabaseConcurrencyLimit limit =
+                new VirtualThreadConfig.DatabaseConcurrencyLimit(1, 10);
+        given(joinPoint.proceed()).willReturn("result");
+
+        //when
+        Object first = limit.limit(joinPoint);
+        Object second = limit.limit(joinPoint);
+
+        //then
+        assertThat(first).isEqualTo("result");
+        assertThat(second).isEqualTo("result");
+    }
+
+    @Test
+    void willThrowWhenNoPermitFreesUpInTime() throws Throwable {
+        //given
+        VirtualThreadConfig.DatabaseConcurrencyLimit limit =
+                new VirtualThreadConfig.DatabaseConcurrencyLimit(1, 10);
+        CountDownLatch holding = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        ProceedingJoinPoint slow = mock(ProceedingJoinPoint.class);
+        given(slow.proceed()).willAnswer(invocation -> {
+            holding.countDown();
+            release.await();
+            return null;
+        });
+        ExecutorService other = Executors.newSingleThreadExecutor();
+        other.submit(() -> {
+            try {
+                limit.limit(slow);
+            } catch (Throwable ignored) {
+            }
+        });
+        holding.await(5, TimeUnit.SECONDS);
+
+        //when
+        //then
+        try {
+            assertThatThrownBy(() -> limit.limit(joinPoint))
+                    .isInstanceOf(ServiceUnavailableException.class)
+                    .hasMessageContaining("Too many concurrent database calls");
+        } finally {
+            release.countDown();
+            other.shutdown();
+        }
+    }
+
+    @Test
+    void nestedCallDoesNotTakeASecondPermit() throws Throwable {
+        //given
+        VirtualThreadConfig.DatabaseConcurrencyLimit limit =
+                new VirtualThreadConfig.DatabaseConcurrencyLimit(1, 10);
+        ProceedingJoinPoint inner = mock(ProceedingJoinPoint.class);
+        given(inner.proceed()).willReturn("inner");
+        given(joinPoint.proceed()).willAnswer(invocation -> limit.limit(inner));
+
+        //when
+        Object result = limit.limit(joinPoint);
+
+        //then
+        assertThat(result).isEqualTo("inner");
+    }
+}
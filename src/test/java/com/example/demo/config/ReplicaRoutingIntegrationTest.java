@@ -0,0 +1,174 @@
+package com.example.demo.config;
+
+import com.example.demo.student.Gender;
+import com.example.demo.student.Student;
+import com.example.demo.student.StudentService;
+import org.h2.tools.Server;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.springframework.test.web.servlet.MockMvc;
+
+import javax.servlet.http.Cookie;
+import java.sql.SQLException;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.cookie;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+/**
+ * Runs against two H2 databases: the primary in memory, the replica behind
+ * its own TCP server so that it can be taken down. Nothing replicates between
+ * them, which tells apart where each read went.
+ */
+@SpringBootTest(properties = {
+        "spring.datasource.url=jdbc:h2:mem:primary;DB_CLOSE_DELAY=-1",
+        "student.datasource.routing.enabled=true",
+        "student.datasource.replica-check-interval-ms=3600000",
+        "student.datasource.replica-connection-timeout-ms=250"
+})
+@AutoConfigureMockMvc
+@DirtiesContext
+class ReplicaRoutingIntegrationTest {
+
+    private static final long HIKARI_ALIVE_BYPASS_MS = 600;
+
+    private static Server replicaServer = startReplicaServer(0);
+
+    @Autowired
+    private StudentService studentService;
+
+    @Autowired
+    private ReplicaRoutingDataSource replicaRoutingDataSource;
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    private final JdbcTemplate primary = new JdbcTemplate(new DriverManagerDataSource(
+            "jdbc:h2:mem:primary;DB_CLOSE_DELAY=-1", "sa", "sa"));
+    private final JdbcTemplate replica = new JdbcTemplate(new DriverManagerDataSource(
+            replicaUrl(), "sa", "sa"));
+
+    @DynamicPropertySource
+    static void replicaProperties(DynamicPropertyRegistry registry) {
+        registry.add("student.datasource.replica-urls", ReplicaRoutingIntegrationTest::replicaUrl);
+    }
+
+    @BeforeEach
+    void setUp() {
+        // the replica starts with the primary's schema and neither holds students
+        primary.update("DELETE FROM student");
+        replica.execute("DROP ALL OBJECTS");
+        for (String statement : primary.queryForList("SCRIPT NODATA", String.class)) {
+            replica.execute(statement);
+        }
+        replica.update("INSERT INTO student (id, name, email, email_domain, gender, version) " +
+                "VALUES (1000, 'Replica', 'replica@gmail.com', 'gmail.com', 'FEMALE', 0)");
+    }
+
+    @AfterAll
+    static void tearDown() {
+        replicaServer.stop();
+    }
+
+    @Test
+    void itShouldReadFromReplicaAndWriteToPrimary() {
+        //given
+        studentService.addStudent(new Student("Primary", "primary@gmail.com", Gender.MALE));
+
+        //when
+        //then
+        assertThat(primary.queryForObject("SELECT name FROM student", String.class)).isEqualTo("Primary");
+        assertThat(studentService.getStudentPage(null, 10, null).getStudents())
+                .extracting(Student::getName)
+                .containsExactly("Replica");
+    }
+
+    @Test
+    void itShouldFillSharedCachesFromPrimary() throws Exception {
+        //given
+        Student written = studentService.addStudent(new Student("Primary", "primary@gmail.com", Gender.MALE));
+
+        //when
+        //then
+        assertThat(studentService.getStudentById(written.getId())).isPresent();
+        assertThat(studentService.getStudentById(1000L)).isEmpty();
+        mockMvc.perform(get("/api/v1/students"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$[0].name").value("Primary"));
+    }
+
+    @Test
+    void itShouldReadOwnWritesFromPrimary() throws Exception {
+        //given
+        Cookie lastWrite = mockMvc.perform(post("/api/v1/students")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"name\":\"Primary\",\"email\":\"primary@gmail.com\",\"gender\":\"MALE\"}"))
+                .andExpect(status().isCreated())
+                .andExpect(cookie().exists(ReadYourWritesFilter.COOKIE_NAME))
+                .andReturn().getResponse().getCookie(ReadYourWritesFilter.COOKIE_NAME);
+
+        //when
+        //then
+        mockMvc.perform(get("/api/v1/students/page").cookie(lastWrite))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.students[0].name").value("Primary"));
+        mockMvc.perform(get("/api/v1/students/page"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.students[0].name").value("Replica"));
+    }
+
+    @Test
+    void itShouldFailOverToPrimaryWhileReplicaIsDown() throws SQLException, InterruptedException {
+        //given
+        studentService.addStudent(new Student("Primary", "primary@gmail.com", Gender.MALE));
+        int port = replicaServer.getPort();
+        replicaServer.stop();
+
+        try {
+            //when
+            replicaRoutingDataSource.checkReplicas();
+
+            //then
+            assertThat(replicaRoutingDataSource.getHealthyReplicas()).isEmpty();
+            assertThat(studentService.getStudentPage(null, 10, null).getStudents())
+                    .extracting(Student::getName)
+                    .containsExactly("Primary");
+        } finally {
+            replicaServer = startReplicaServer(port);
+        }
+
+        // back in rotation once it answers again, and pooled connections to
+        // the stopped server have idled long enough for Hikari to check them
+        Thread.sleep(HIKARI_ALIVE_BYPASS_MS);
+        replicaRoutingDataSource.checkReplicas();
+        assertThat(replicaRoutingDataSource.getHealthyReplicas()).containsExactly("replica-1");
+        assertThat(studentService.getStudentPage(null, 10, null).getStudents())
+                .extracting(Student::getName)
+                .containsExactly("Replica");
+    }
+
+    private static String replicaUrl() {
+        return "jdbc:h2:tcp://localhost:" + replicaServer.getPort() + "/mem:replica;DB_CLOSE_DELAY=-1";
+    }
+
+    private static Server startReplicaServer(int port) {
+        try {
+            return Server.createTcpServer("-tcpPort", Integer.toString(port), "-ifNotExists").start();
+        } catch (SQLException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
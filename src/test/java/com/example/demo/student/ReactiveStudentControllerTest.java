@@ -0,0 +1,140 @@
+package com.example.demo.student;
+
+import com.example.demo.student.exception.BadRequestException;
+import com.example.demo.student.exception.StudentNotFoundException;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.test.web.reactive.server.WebTestClient;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class ReactiveStudentControllerTest {
+
+    @Mock
+    private ReactiveStudentService studentService;
+
+    private WebTestClient webTestClient;
+
+    @BeforeEach
+    void setUp() {
+        webTestClient = WebTestClient.bindToController(new ReactiveStudentController(studentService)).build();
+    }
+
+    @Test
+    void canStreamAllStudents() {
+        // the service emits students one at a time
+        when(studentService.getAllStudents()).thenReturn(Flux.just(
+                new Student("John", "john@gmail.com", Gender.MALE),
+                new Student("Jane", "jane@gmail.com", Gender.FEMALE)));
+
+        // a JSON array by default
+        webTestClient.get().uri("/api/v1/students")
+                .accept(MediaType.APPLICATION_JSON)
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody()
+                .jsonPath("$.length()").isEqualTo(2)
+                .jsonPath("$[1].name").isEqualTo("Jane");
+    }
+
+    @Test
+    void canStreamAllStudentsAsNdjson() {
+        // the service emits students one at a time
+        when(studentService.getAllStudents()).thenReturn(Flux.just(
+                new Student("John", "john@gmail.com", Gender.MALE),
+                new Student("Jane", "jane@gmail.com", Gender.FEMALE)));
+
+        // one student per line when the client asks for NDJSON
+        webTestClient.get().uri("/api/v1/students")
+                .accept(MediaType.APPLICATION_NDJSON)
+                .exchange()
+                .expectStatus().isOk()
+                .expectHeader().contentTypeCompatibleWith(MediaType.APPLICATION_NDJSON)
+                .expectBodyList(Student.class).hasSize(2);
+    }
+
+    @Test
+    void canAddStudentWithETag() {
+        // the saved student is at version 0
+        Student saved = new Student(1L, "John", "john@gmail.com", Gender.MALE, 0L);
+        when(studentService.addStudent(any(Student.class))).thenReturn(Mono.just(saved));
+
+        // 201 with the version as ETag
+        webTestClient.post().uri("/api/v1/students")
+                .contentType(MediaType.APPLICATION_JSON)
+                .bodyValue("{\"name\":\"John\",\"email\":\"john@gmail.com\",\"gender\":\"MALE\"}")
+                .exchange()
+                .expectStatus().isCreated()
+                .expectHeader().valueEquals(HttpHeaders.ETAG, "\"0\"")
+                .expectBody()
+                .jsonPath("$.id").isEqualTo(1);
+    }
+
+    @Test
+    void willRejectInvalidStudent() {
+        // an invalid email fails validation before reaching the service
+        webTestClient.post().uri("/api/v1/students")
+                .contentType(MediaType.APPLICATION_JSON)
+                .bodyValue("{\"name\":\"John\",\"email\":\"not-an-email\",\"gender\":\"MALE\"}")
+                .exchange()
+                .expectStatus().isBadRequest();
+    }
+
+    @Test
+    void willAnswerBadRequestWhenEmailTaken() {
+        // the service rejects the email
+        when(studentService.addStudent(any(Student.class)))
+                .thenReturn(Mono.error(new BadRequestException("Email john@gmail.com taken")));
+
+        // BadRequestException keeps its status
+        webTestClient.post().uri("/api/v1/students")
+                .contentType(MediaType.APPLICATION_JSON)
+                .bodyValue("{\"name\":\"John\",\"email\":\"john@gmail.com\",\"gender\":\"MALE\"}")
+                .exchange()
+                .expectStatus().isBadRequest();
+    }
+
+    @Test
+    void willAnswerNotFoundForUnknownStudent() {
+        // no student with this id
+        when(studentService.getStudentById(1L)).thenReturn(Mono.empty());
+
+        webTestClient.get().uri("/api/v1/students/1")
+                .exchange()
+                .expectStatus().isNotFound();
+    }
+
+    @Test
+    void canGetStudentWithETag() {
+        // the student is at version 3
+        when(studentService.getStudentById(1L)).thenReturn(Mono.just(
+                new Student(1L, "John", "john@gmail.com", Gender.MALE, 3L)));
+
+        webTestClient.get().uri("/api/v1/students/1")
+                .exchange()
+                .expectStatus().isOk()
+                .expectHeader().valueEquals(HttpHeaders.ETAG, "\"3\"");
+    }
+
+    @Test
+    void willAnswerNotFoundWhenDeletingUnknownStudent() {
+        // StudentNotFoundException keeps its status
+        when(studentService.deleteStudent(eq(1L), eq(2L)))
+                .thenReturn(Mono.error(new StudentNotFoundException("Student with id 1 does not exists")));
+
+        webTestClient.delete().uri("/api/v1/students/1")
+                .header(HttpHeaders.IF_MATCH, "\"2\"")
+                .exchange()
+                .expectStatus().isNotFound();
+    }
+}
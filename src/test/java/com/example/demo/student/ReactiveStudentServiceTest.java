@@ -0,0 +1,196 @@
+package com.example.demo.student;
+
+import com.example.demo.student.exception.BadRequestException;
+import com.example.demo.student.exception.PreconditionFailedException;
+import com.example.demo.student.exception.StudentNotFoundException;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.core.AutoConfigureCache;
+import org.springframework.boot.test.autoconfigure.data.r2dbc.DataR2dbcTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.r2dbc.core.DatabaseClient;
+import org.springframework.test.context.ActiveProfiles;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+@DataR2dbcTest(properties = {
+        "spring.autoconfigure.exclude=",
+        "spring.main.web-application-type=none",
+        "spring.r2dbc.url=r2dbc:h2:mem:///reactive;DB_CLOSE_DELAY=-1"
+})
+@AutoConfigureCache
+@ActiveProfiles("reactive")
+@Import({ReactiveStudentService.class, ReactiveStudentRepository.class})
+class ReactiveStudentServiceTest {
+
+    @Autowired
+    private ReactiveStudentService underTest;
+
+    @Autowired
+    private DatabaseClient databaseClient;
+
+    @BeforeEach
+    void setUp() {
+        // the schema Hibernate creates for the blocking profile
+        databaseClient.sql("" +
+                "CREATE SEQUENCE IF NOT EXISTS student_sequence " +
+                "START WITH 1 INCREMENT BY 50")
+                .then().block();
+        databaseClient.sql("" +
+                "CREATE TABLE IF NOT EXISTS student (" +
+                "id BIGINT PRIMARY KEY, " +
+                "name VARCHAR(255) NOT NULL, " +
+                "email VARCHAR(255) NOT NULL UNIQUE, " +
+                "email_domain VARCHAR(255), " +
+                "gender VARCHAR(255) NOT NULL, " +
+                "version BIGINT)")
+                .then().block();
+        databaseClient.sql("DELETE FROM student").then().block();
+    }
+
+    @Test
+    void canAddAndGetStudent() {
+        //given
+        Student student = new Student("Ninh", "ninh@gmail.com", Gender.MALE);
+
+        //when
+        Student saved = underTest.addStudent(student).block();
+
+        //then
+        assertThat(saved.getId()).isNotNull();
+        assertThat(saved.getVersion()).isZero();
+        assertThat(underTest.getStudentById(saved.getId()).block()).isEqualTo(saved);
+    }
+
+    @Test
+    void willThrowWhenEmailIsTaken() {
+        //given
+        underTest.addStudent(new Student("Ninh", "ninh@gmail.com", Gender.MALE)).block();
+
+        //when
+        //then
+        assertThatThrownBy(() -> underTest.addStudent(
+                new Student("Other", "ninh@gmail.com", Gender.FEMALE)).block())
+                .isInstanceOf(BadRequestException.class)
+                .hasMessageContaining("Email ninh@gmail.com taken");
+    }
+
+    @Test
+    void canStreamAllStudentsInIdOrder() {
+        //given
+        for (int i = 0; i < 5; i++) {
+            underTest.addStudent(new Student("Student" + i, "student" + i + "@gmail.com", Gender.FEMALE)).block();
+        }
+
+        //when
+        List<Student> students = underTest.getAllStudents().collectList().block();
+
+        //then
+        assertThat(students).extracting(Student::getName)
+                .containsExactly("Student0", "Student1", "Student2", "Student3", "Student4");
+    }
+
+    @Test
+    void canPageStudentsByGender() {
+        //given
+        for (int i = 0; i < 5; i++) {
+            underTest.addStudent(new Student("Student" + i, "student" + i + "@gmail.com",
+                    i % 2 == 0 ? Gender.FEMALE : Gender.MALE)).block();
+        }
+
+        //when
+        StudentPage first = underTest.getStudentPage(null, 2, Gender.FEMALE).block();
+        StudentPage second = underTest.getStudentPage(first.getNextCursor(), 2, Gender.FEMALE).block();
+
+        //then
+        assertThat(first.getStudents()).extracting(Student::getName)
+                .containsExactly("Student0", "Student2");
+        assertThat(second.getStudents()).extracting(Student::getName)
+                .containsExactly("Student4");
+        assertThat(second.getNextCursor()).isNull();
+    }
+
+    @Test
+    void canUpdateStudentAtExpectedVersion() {
+        //given
+        Student saved = underTest.addStudent(new Student("Ninh", "ninh@gmail.com", Gender.MALE)).block();
+
+        //when
+        Student updated = underTest.saveEditStudent(
+                new Student("Thanh", "thanh@gmail.com", Gender.MALE), saved.getId(), 0L).block();
+
+        //then
+        assertThat(updated.getVersion()).isEqualTo(1L);
+        Student found = underTest.getStudentById(saved.getId()).block();
+        assertThat(found.getName()).isEqualTo("Thanh");
+        assertThat(found.getVersion()).isEqualTo(1L);
+    }
+
+    @Test
+    void canKeepEmailDomainInStepWithEmail() {
+        //given
+        Student saved = underTest.addStudent(new Student("Ninh", "ninh@Gmail.com", Gender.MALE)).block();
+        String inserted = selectEmailDomain(saved.getId());
+
+        //when
+        underTest.saveEditStudent(
+                new Student("Ninh", "ninh@other.org", Gender.MALE), saved.getId(), null).block();
+
+        //then
+        assertThat(inserted).isEqualTo("gmail.com");
+        assertThat(selectEmailDomain(saved.getId())).isEqualTo("other.org");
+    }
+
+    private String selectEmailDomain(Long id) {
+        return databaseClient.sql("SELECT email_domain FROM student WHERE id = :id")
+                .bind("id", id)
+                .map(row -> row.get(0, String.class))
+                .one()
+                .block();
+    }
+
+    @Test
+    void willThrowWhenUpdatingWithConflictingEmail() {
+        //given
+        underTest.addStudent(new Student("Ninh", "ninh@gmail.com", Gender.MALE)).block();
+        Student other = underTest.addStudent(new Student("Thanh", "thanh@gmail.com", Gender.MALE)).block();
+
+        //when
+        //then
+        assertThatThrownBy(() -> underTest.saveEditStudent(
+                new Student("Thanh", "ninh@gmail.com", Gender.MALE), other.getId(), null).block())
+                .isInstanceOf(BadRequestException.class)
+                .hasMessageContaining("Email ninh@gmail.com conflict");
+    }
+
+    @Test
+    void willThrowWhenUpdatingStaleVersion() {
+        //given
+        Student saved = underTest.addStudent(new Student("Ninh", "ninh@gmail.com", Gender.MALE)).block();
+
+        //when
+        //then
+        assertThatThrownBy(() -> underTest.saveEditStudent(
+                new Student("Thanh", "thanh@gmail.com", Gender.MALE), saved.getId(), 7L).block())
+                .isInstanceOf(PreconditionFailedException.class);
+    }
+
+    @Test
+    void canDeleteStudentAndThrowWhenGone() {
+        //given
+        Student saved = underTest.addStudent(new Student("Ninh", "ninh@gmail.com", Gender.MALE)).block();
+
+        //when
+        underTest.deleteStudent(saved.getId(), null).block();
+
+        //then
+        assertThat(underTest.getStudentById(saved.getId()).block()).isNull();
+        assertThatThrownBy(() -> underTest.deleteStudent(saved.getId(), null).block())
+                .isInstanceOf(StudentNotFoundException.class)
+                .hasMessageContaining("does not exists");
+    }
+}
@@ -0,0 +1,93 @@
+package com.example.demo.student;
+
+import com.example.demo.student.exception.BadRequestException;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.dao.DataIntegrityViolationException;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+
+@ExtendWith(MockitoExtension.class)
+class StudentBatchWriterTest {
+
+    private final Student john = new Student("John", "john@gmail.com", Gender.MALE);
+    private final Student jane = new Student("Jane", "jane@gmail.com", Gender.FEMALE);
+    private final Student anna = new Student("Anna", "anna@gmail.com", Gender.FEMALE);
+    private final Student mark = new Student("Mark", "mark@gmail.com", Gender.MALE);
+
+    @Mock
+    private StudentService studentService;
+
+    private StudentBatchWriter underTest;
+
+    @BeforeEach
+    void setUp() {
+        underTest = new StudentBatchWriter(studentService);
+    }
+
+    @Test
+    void canWriteBatchInOneCall() {
+        //given
+        given(studentService.addStudents(List.of(john, jane))).willReturn(List.of(
+                StudentBatchResult.created(0, 1L),
+                StudentBatchResult.emailTaken(1, "jane@gmail.com")));
+
+        //when
+        List<StudentBatchResult> results = underTest.write(List.of(john, jane));
+
+        //then
+        assertThat(results).containsExactly(
+                StudentBatchResult.created(0, 1L),
+                StudentBatchResult.emailTaken(1, "jane@gmail.com"));
+        verify(studentService, never()).addStudent(john);
+    }
+
+    @Test
+    void willNarrowConstraintViolationDownToTheOffender() {
+        //given
+        // mark's email was taken after the batch was checked
+        DataIntegrityViolationException duplicate = new DataIntegrityViolationException("duplicate email");
+        given(studentService.addStudents(List.of(john, jane, anna, mark))).willThrow(duplicate);
+        given(studentService.addStudents(List.of(john, jane))).willReturn(List.of(
+                StudentBatchResult.created(0, 1L),
+                StudentBatchResult.created(1, 2L)));
+        given(studentService.addStudents(List.of(anna, mark))).willThrow(duplicate);
+        given(studentService.addStudents(List.of(anna))).willReturn(List.of(
+                StudentBatchResult.created(0, 3L)));
+        given(studentService.addStudents(List.of(mark))).willThrow(duplicate);
+        given(studentService.addStudent(mark)).willThrow(new BadRequestException("Email mark@gmail.com taken"));
+
+        //when
+        List<StudentBatchResult> results = underTest.write(List.of(john, jane, anna, mark));
+
+        //then
+        assertThat(results).containsExactly(
+                StudentBatchResult.created(0, 1L),
+                StudentBatchResult.created(1, 2L),
+                StudentBatchResult.created(2, 3L),
+                StudentBatchResult.emailTaken(3, "mark@gmail.com"));
+    }
+
+    @Test
+    void willReportOtherConstraintViolationAsInvalid() {
+        //given
+        DataIntegrityViolationException violation = new DataIntegrityViolationException("value too long");
+        given(studentService.addStudents(List.of(john))).willThrow(violation);
+        given(studentService.addStudent(john)).willThrow(violation);
+
+        //when
+        List<StudentBatchResult> results = underTest.write(List.of(john));
+
+        //then
+        assertThat(results).containsExactly(
+                StudentBatchResult.invalid(0, "Violates a database constraint"));
+    }
+}
@@ -0,0 +1,162 @@
+package com.example.demo.student;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class StudentChangeFeedTest {
+
+    private final HeldExecutor delivery = new HeldExecutor();
+    private final AtomicLong nanoTime = new AtomicLong();
+    private final StudentChangeFeed underTest = new StudentChangeFeed(
+            8, Duration.ofSeconds(30), Duration.ofMinutes(1), delivery, nanoTime::get);
+
+    @Test
+    void willDisconnectSubscriberThatStalls() {
+        //given
+        underTest.subscribe(null);
+        delivery.runAll();
+
+        //when
+        underTest.recordDeleted(1L);
+        nanoTime.addAndGet(Duration.ofSeconds(20).toNanos());
+        underTest.recordDeleted(2L);
+        int whileWithinTimeout = underTest.getSubscriberCount();
+        nanoTime.addAndGet(Duration.ofSeconds(20).toNanos());
+        underTest.recordDeleted(3L);
+
+        //then
+        assertThat(whileWithinTimeout).isEqualTo(1);
+        assertThat(underTest.getSubscriberCount()).isZero();
+    }
+
+    @Test
+    void willDisconnectStalledSubscriberOnHeartbeat() {
+        //given
+        underTest.subscribe(null);
+        delivery.runAll();
+        underTest.recordDeleted(1L);
+
+        //when
+        nanoTime.addAndGet(Duration.ofMinutes(1).toNanos());
+        underTest.heartbeat();
+
+        //then
+        assertThat(underTest.getSubscriberCount()).isZero();
+    }
+
+    @Test
+    void canKeepSubscriberThroughBurst() {
+        //given
+        underTest.subscribe(null);
+        delivery.runAll();
+
+        //when
+        // a single commit publishes all of them before any can be sent
+        for (long id = 1; id <= 8; id++) {
+            underTest.recordDeleted(id);
+        }
+        delivery.runAll();
+
+        //then
+        assertThat(underTest.getSubscriberCount()).isEqualTo(1);
+    }
+
+    @Test
+    void willDisconnectSubscriberThatFallsOutOfBuffer() {
+        //given
+        underTest.subscribe(null);
+        delivery.runAll();
+
+        //when
+        for (long id = 1; id <= 9; id++) {
+            underTest.recordDeleted(id);
+        }
+
+        //then
+        assertThat(underTest.getSubscriberCount()).isZero();
+    }
+
+    @Test
+    void canKeepSubscriberThatKeepsUp() {
+        //given
+        underTest.subscribe(null);
+
+        //when
+        for (long id = 1; id <= 10; id++) {
+            underTest.recordDeleted(id);
+            nanoTime.addAndGet(Duration.ofSeconds(20).toNanos());
+            delivery.runAll();
+        }
+
+        //then
+        assertThat(underTest.getSubscriberCount()).isEqualTo(1);
+    }
+
+    @Test
+    void willDeliverEventPublishedDuringHeartbeat() {
+        //given
+        underTest.subscribe(null);
+        delivery.runAll();
+
+        //when
+        underTest.heartbeat();
+        underTest.recordDeleted(1L);
+        delivery.runAll();
+        nanoTime.addAndGet(Duration.ofMinutes(1).toNanos());
+        underTest.recordDeleted(2L);
+
+        //then
+        // not stalled if the first event went out after the heartbeat
+        assertThat(underTest.getSubscriberCount()).isEqualTo(1);
+    }
+
+    /**
+     * Runs delivery tasks only when told to, standing in for a slow client.
+     */
+    private static final class HeldExecutor extends AbstractExecutorService {
+        private final List<Runnable> tasks = new ArrayList<>();
+
+        void runAll() {
+            while (!tasks.isEmpty()) {
+                tasks.remove(0).run();
+            }
+        }
+
+        @Override
+        public void execute(Runnable command) {
+            tasks.add(command);
+        }
+
+        @Override
+        public void shutdown() {
+        }
+
+        @Override
+        public List<Runnable> shutdownNow() {
+            return List.of();
+        }
+
+        @Override
+        public boolean isShutdown() {
+            return false;
+        }
+
+        @Override
+        public boolean isTerminated() {
+            return false;
+        }
+
+        @Override
+        public boolean awaitTermination(long timeout, TimeUnit unit) {
+            return true;
+        }
+    }
+}
@@ -4,39 +4,80 @@ package com.example.demo.student;
 import static org.mockito.Mockito.*;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.*;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.tuple;
 import static org.hamcrest.Matchers.is;
 
+import com.example.demo.config.BinaryContentConfig;
+import com.example.demo.student.exception.PreconditionFailedException;
+import com.example.demo.student.exception.StudentNotFoundException;
+import com.example.demo.student.exception.TooManyRequestsException;
+import com.fasterxml.jackson.core.type.TypeReference;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.databind.CBORMapper;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import com.google.common.util.concurrent.MoreExecutors;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.MockitoAnnotations;
 import org.mockito.junit.jupiter.MockitoExtension;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.support.StaticListableBeanFactory;
 import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
 import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.context.annotation.Import;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.MediaType;
+import org.springframework.http.converter.HttpMessageConverter;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import org.springframework.http.converter.json.MappingJackson2HttpMessageConverter;
+import org.springframework.mock.web.MockMultipartFile;
 import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
 import org.springframework.test.web.servlet.setup.MockMvcBuilders;
 
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.time.Duration;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.function.Consumer;
+import java.util.zip.GZIPInputStream;
 
 
 @WebMvcTest(StudentController.class)
+@Import({StudentListCache.class, StudentChangeFeed.class, StudentIdempotencyStore.class})
 @ExtendWith(MockitoExtension.class)
 public class StudentControllerTest {
+    private static final MediaType SMILE = new MediaType("application", "x-jackson-smile");
+
     @Autowired
     private MockMvc mockMvc;
 
     @MockBean
     private StudentService studentService;
 
+    @MockBean
+    private StudentImporter studentImporter;
+
+    private final StaticListableBeanFactory beanFactory = new StaticListableBeanFactory();
+    private final StudentListCache studentListCache = new StudentListCache(new ObjectMapper(), Duration.ofMinutes(1));
+    private final StudentChangeFeed studentChangeFeed = new StudentChangeFeed(
+            4, Duration.ofMinutes(1), Duration.ofMinutes(1), MoreExecutors.newDirectExecutorService(),
+            System::nanoTime);
+    private final StudentIdempotencyStore studentIdempotencyStore = new StudentIdempotencyStore(
+            100, Duration.ofMinutes(1), Duration.ofSeconds(1));
+
     @BeforeEach
     public void setup() {
         MockitoAnnotations.openMocks(this);
-        this.mockMvc = MockMvcBuilders.standaloneSetup(new StudentController(studentService)).build();
+        this.mockMvc = MockMvcBuilders.standaloneSetup(new StudentController(
+                studentService, new ObjectMapper(), beanFactory.getBeanProvider(StudentIngestQueue.class),
+                studentListCache, studentImporter, studentChangeFeed, studentIdempotencyStore)).build();
     }
 
     @Test
@@ -61,6 +102,93 @@ public class StudentControllerTest {
         verify(studentService, times(1)).getAllStudents();
     }
 
+    @Test
+    void testGetAllStudentsFromCacheUntilChanged() throws Exception {
+        when(studentService.getAllStudents()).thenReturn(List.of(
+                new Student(1L, "John", "john@gmail.com", Gender.MALE, 0L)));
+
+        // the first read loads the list and tags it
+        String eTag = mockMvc.perform(get("/api/v1/students").accept(MediaType.APPLICATION_JSON))
+                .andExpect(status().isOk())
+                .andExpect(header().string(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING))
+                .andReturn().getResponse().getHeader(HttpHeaders.ETAG);
+
+        // a client holding the tag gets 304, without another query
+        mockMvc.perform(get("/api/v1/students").header(HttpHeaders.IF_NONE_MATCH, eTag))
+                .andExpect(status().isNotModified());
+        verify(studentService, times(1)).getAllStudents();
+
+        // after a write the list is loaded again
+        studentListCache.recordChange();
+        mockMvc.perform(get("/api/v1/students").header(HttpHeaders.IF_NONE_MATCH, eTag))
+                .andExpect(status().isNotModified());
+        verify(studentService, times(2)).getAllStudents();
+    }
+
+    @Test
+    void testGetAllStudentsGzipped() throws Exception {
+        when(studentService.getAllStudents()).thenReturn(List.of(
+                new Student(1L, "John", "john@gmail.com", Gender.MALE, 0L)));
+
+        // ask for gzip
+        byte[] body = mockMvc.perform(get("/api/v1/students")
+                        .header(HttpHeaders.ACCEPT_ENCODING, "deflate, gzip;q=0.8"))
+                .andExpect(status().isOk())
+                .andExpect(header().string(HttpHeaders.CONTENT_ENCODING, "gzip"))
+                .andReturn().getResponse().getContentAsByteArray();
+
+        // the body is the compressed JSON list
+        try (GZIPInputStream in = new GZIPInputStream(new ByteArrayInputStream(body))) {
+            assertThat(new ObjectMapper().readTree(in).get(0).get("name").asText()).isEqualTo("John");
+        }
+
+        // gzip;q=0 refuses it
+        mockMvc.perform(get("/api/v1/students").header(HttpHeaders.ACCEPT_ENCODING, "gzip;q=0"))
+                .andExpect(status().isOk())
+                .andExpect(header().doesNotExist(HttpHeaders.CONTENT_ENCODING))
+                .andExpect(jsonPath("$[0].name", is("John")));
+    }
+
+    @Test
+    void testGetAllStudentsAsCbor() throws Exception {
+        // the same students as JSON would return
+        List<Student> students = List.of(
+                new Student(1L, "John", "john@gmail.com", Gender.MALE, 0L),
+                new Student(2L, "Jane", "jane@gmail.com", Gender.FEMALE, 0L));
+        when(studentService.getAllStudents()).thenReturn(students);
+
+        // ask for CBOR instead of JSON
+        byte[] body = binaryMockMvc().perform(get("/api/v1/students").accept(MediaType.APPLICATION_CBOR))
+                .andExpect(status().isOk())
+                .andExpect(content().contentType(MediaType.APPLICATION_CBOR))
+                .andReturn().getResponse().getContentAsByteArray();
+
+        // the version is left out like in JSON
+        List<Student> decoded = new CBORMapper().readValue(body, new TypeReference<List<Student>>() {
+        });
+        assertThat(decoded).extracting(Student::getId, Student::getName, Student::getVersion)
+                .containsExactly(tuple(1L, "John", null), tuple(2L, "Jane", null));
+    }
+
+    @Test
+    void testAddStudentAsSmile() throws Exception {
+        Student student = new Student("John", "john@gmail.com", Gender.MALE);
+        Student saved = new Student(1L, "John", "john@gmail.com", Gender.MALE, 0L);
+        when(studentService.addStudent(student)).thenReturn(saved);
+
+        // send and accept Smile
+        ObjectMapper smileMapper = new ObjectMapper(new SmileFactory());
+        byte[] body = binaryMockMvc().perform(post("/api/v1/students")
+                        .contentType(SMILE)
+                        .accept(SMILE)
+                        .content(smileMapper.writeValueAsBytes(student)))
+                .andExpect(status().isCreated())
+                .andExpect(content().contentType(SMILE))
+                .andReturn().getResponse().getContentAsByteArray();
+
+        assertThat(smileMapper.readValue(body, Student.class).getId()).isEqualTo(1L);
+    }
+
     @Test
     public void testAddStudent() throws Exception {
         // create a sample student object
@@ -83,19 +211,294 @@ public class StudentControllerTest {
         verify(studentService, times(1)).addStudent(eq(student));
     }
 
+    @Test
+    void testAddStudentReplayedForSameIdempotencyKey() throws Exception {
+        // the first request creates the student
+        Student student = new Student("John", "john@gmail.com", Gender.MALE);
+        when(studentService.addStudent(any(Student.class)))
+                .thenReturn(new Student(1L, "John", "john@gmail.com", Gender.MALE, 0L));
+        mockMvc.perform(post("/api/v1/students")
+                        .header(StudentIdempotencyStore.IDEMPOTENCY_KEY, "abc")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(asJsonString(student)))
+                .andExpect(status().isCreated())
+                .andExpect(header().doesNotExist(StudentIdempotencyStore.REPLAYED));
+
+        // the retry gets the same response without another write
+        mockMvc.perform(post("/api/v1/students")
+                        .header(StudentIdempotencyStore.IDEMPOTENCY_KEY, "abc")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(asJsonString(student)))
+                .andExpect(status().isCreated())
+                .andExpect(header().string(StudentIdempotencyStore.REPLAYED, "true"))
+                .andExpect(header().string(HttpHeaders.ETAG, "\"0\""))
+                .andExpect(jsonPath("$.id", is(1)));
+        verify(studentService, times(1)).addStudent(any(Student.class));
+
+        // the key cannot be reused for another student
+        mockMvc.perform(post("/api/v1/students")
+                        .header(StudentIdempotencyStore.IDEMPOTENCY_KEY, "abc")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(asJsonString(new Student("Jane", "jane@gmail.com", Gender.FEMALE))))
+                .andExpect(status().isUnprocessableEntity());
+    }
+
+    @Test
+    void testUpdateStudentByIdReplayedForSameIdempotencyKey() throws Exception {
+        // the first update fails on a stale version
+        Student student = new Student("John", "john@gmail.com", Gender.MALE);
+        when(studentService.saveEditStudent(student, 1L, 3L))
+                .thenThrow(new PreconditionFailedException("Student with id 1 is not at version 3"));
+
+        // so does the retry, without another attempt
+        for (int i = 0; i < 2; i++) {
+            mockMvc.perform(put("/api/v1/students/1")
+                            .header(HttpHeaders.IF_MATCH, "\"3\"")
+                            .header(StudentIdempotencyStore.IDEMPOTENCY_KEY, "abc")
+                            .contentType(MediaType.APPLICATION_JSON)
+                            .content(asJsonString(student)))
+                    .andExpect(status().isPreconditionFailed());
+        }
+        verify(studentService, times(1)).saveEditStudent(student, 1L, 3L);
+    }
+
+    @Test
+    void testAddStudentQueuedWhenIngestEnabled() throws Exception {
+        // student ingest is enabled
+        StudentIngestQueue ingestQueue = mock(StudentIngestQueue.class);
+        beanFactory.addBean("studentIngestQueue", ingestQueue);
+        Student student = new Student("John", "john@gmail.com", Gender.MALE);
+        when(ingestQueue.submit(any(Student.class))).thenReturn(StudentIngestStatus.pending("abc"));
+
+        // the student is queued rather than written
+        mockMvc.perform(post("/api/v1/students")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(asJsonString(student)))
+                .andExpect(status().isAccepted())
+                .andExpect(header().string(HttpHeaders.LOCATION, "http://localhost/api/v1/students/ingest/abc"))
+                .andExpect(jsonPath("$.trackingId", is("abc")))
+                .andExpect(jsonPath("$.state", is("PENDING")));
+
+        verify(ingestQueue).submit(eq(student));
+        verifyNoInteractions(studentService);
+    }
+
+    @Test
+    void testAddStudentWhenIngestQueueFull() throws Exception {
+        // the ingest queue refuses the student
+        StudentIngestQueue ingestQueue = mock(StudentIngestQueue.class);
+        beanFactory.addBean("studentIngestQueue", ingestQueue);
+        when(ingestQueue.submit(any(Student.class)))
+                .thenThrow(new TooManyRequestsException("Student ingest queue is full"));
+
+        // 429 so clients back off
+        mockMvc.perform(post("/api/v1/students")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(asJsonString(new Student("John", "john@gmail.com", Gender.MALE))))
+                .andExpect(status().isTooManyRequests());
+    }
+
+    @Test
+    void testGetIngestStatus() throws Exception {
+        // the queued student was found to have a taken email
+        StudentIngestQueue ingestQueue = mock(StudentIngestQueue.class);
+        beanFactory.addBean("studentIngestQueue", ingestQueue);
+        when(ingestQueue.getStatus("abc")).thenReturn(Optional.of(
+                StudentIngestStatus.of("abc", StudentBatchResult.emailTaken(0, "john@gmail.com"))));
+
+        mockMvc.perform(get("/api/v1/students/ingest/abc"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.state", is("EMAIL_TAKEN")))
+                .andExpect(jsonPath("$.message", is("Email john@gmail.com taken")));
+
+        // unknown tracking ids, or ingest disabled, are not found
+        mockMvc.perform(get("/api/v1/students/ingest/other"))
+                .andExpect(status().isNotFound());
+    }
+
+    @Test
+    void testImportStudents() throws Exception {
+        // the importer queues the CSV body
+        StudentImportStatus queued = new StudentImportStatus("abc", StudentImportStatus.State.QUEUED,
+                0, 0, 0, 0, 0, null, null, null, List.of());
+        when(studentImporter.submit(any(InputStream.class))).thenReturn(queued);
+
+        // 202 pointing at the job status
+        mockMvc.perform(post("/api/v1/students/import")
+                        .contentType("text/csv")
+                        .content("name,email,gender\nJohn,john@gmail.com,MALE\n"))
+                .andExpect(status().isAccepted())
+                .andExpect(header().string(HttpHeaders.LOCATION, "http://localhost/api/v1/students/import/abc"))
+                .andExpect(jsonPath("$.jobId", is("abc")))
+                .andExpect(jsonPath("$.state", is("QUEUED")));
+
+        // the same for a multipart upload
+        mockMvc.perform(multipart("/api/v1/students/import")
+                        .file(new MockMultipartFile("file", "students.csv", "text/csv",
+                                "name,email,gender\n".getBytes())))
+                .andExpect(status().isAccepted())
+                .andExpect(header().string(HttpHeaders.LOCATION, "http://localhost/api/v1/students/import/abc"));
+
+        verify(studentImporter, times(2)).submit(any(InputStream.class));
+    }
+
+    @Test
+    void testGetImportStatus() throws Exception {
+        // the job finished with one taken email
+        when(studentImporter.getStatus("abc")).thenReturn(Optional.of(new StudentImportStatus(
+                "abc", StudentImportStatus.State.COMPLETED, 2, 1, 0, 1, 100, null, null, null,
+                List.of("row 2: Email john@gmail.com taken"))));
+
+        mockMvc.perform(get("/api/v1/students/import/abc"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.state", is("COMPLETED")))
+                .andExpect(jsonPath("$.created", is(1)))
+                .andExpect(jsonPath("$.errors[0]", is("row 2: Email john@gmail.com taken")));
+
+        // unknown or expired jobs are not found
+        mockMvc.perform(get("/api/v1/students/import/other"))
+                .andExpect(status().isNotFound());
+    }
+
+    @Test
+    void testStreamChanges() throws Exception {
+        // subscribe, then commit a create and a delete
+        MvcResult result = mockMvc.perform(get("/api/v1/students/changes"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+        studentChangeFeed.recordCreated(new Student(1L, "John", "john@gmail.com", Gender.MALE, 0L));
+        studentChangeFeed.recordDeleted(1L);
+
+        // one event each, numbered in order
+        assertThat(result.getResponse().getContentType()).startsWith(MediaType.TEXT_EVENT_STREAM_VALUE);
+        assertThat(result.getResponse().getContentAsString()).isEqualTo(
+                "id:1\n" +
+                "data:{\"sequence\":1,\"type\":\"CREATED\",\"studentId\":1," +
+                "\"student\":{\"id\":1,\"name\":\"John\",\"email\":\"john@gmail.com\",\"gender\":\"MALE\"}}\n\n" +
+                "id:2\n" +
+                "data:{\"sequence\":2,\"type\":\"DELETED\",\"studentId\":1,\"student\":null}\n\n");
+    }
+
+    @Test
+    void testStreamChangesFromLastEventId() throws Exception {
+        // three changes were committed, the client saw the first
+        studentChangeFeed.recordDeleted(1L);
+        studentChangeFeed.recordDeleted(2L);
+        studentChangeFeed.recordDeleted(3L);
+
+        // the other two are replayed on reconnect
+        MvcResult result = mockMvc.perform(get("/api/v1/students/changes").header("Last-Event-ID", "1"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+        String events = result.getResponse().getContentAsString();
+        assertThat(events).doesNotContain("id:1\n").contains("id:2\n", "id:3\n");
+
+        // an id this feed never issued, e.g. from before a restart, asks for a reload
+        result = mockMvc.perform(get("/api/v1/students/changes").header("Last-Event-ID", "99"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+        assertThat(result.getResponse().getContentAsString()).isEqualTo("event:reset\nid:3\ndata:3\n\n");
+    }
+
+    @Test
+    void testGetStudentsByIds() throws Exception {
+        // two of the three requested students exist
+        when(studentService.getStudentsByIds(List.of(2L, 1L, 3L))).thenReturn(List.of(
+                new Student(2L, "Jane", "jane@gmail.com", Gender.FEMALE, 0L),
+                new Student(1L, "John", "john@gmail.com", Gender.MALE, 0L)));
+
+        // perform the GET request with a comma separated id list
+        mockMvc.perform(get("/api/v1/students").param("ids", "2,1,3"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.size()").value(2))
+                .andExpect(jsonPath("$[0].id", is(2)))
+                .andExpect(jsonPath("$[1].id", is(1)));
+
+        // the list endpoint is not used for id lookups
+        verify(studentService, never()).getAllStudents();
+    }
+
+    @Test
+    void testSearchStudents() throws Exception {
+        // one male student whose name starts with Ni
+        when(studentService.searchStudents("Ni", Gender.MALE, null, StudentService.DEFAULT_SEARCH_LIMIT))
+                .thenReturn(List.of(new StudentSummary(1L, "Ninh", "ninh@gmail.com", Gender.MALE)));
+
+        // perform the GET request with the default limit
+        mockMvc.perform(get("/api/v1/students/search")
+                        .param("name", "Ni")
+                        .param("gender", "MALE"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.size()").value(1))
+                .andExpect(jsonPath("$[0].id", is(1)))
+                .andExpect(jsonPath("$[0].name", is("Ninh")));
+    }
+
+    @Test
+    void testGetStudentStats() throws Exception {
+        // counts kept in memory by the service
+        when(studentService.getStudentStats()).thenReturn(new StudentStats(
+                3, Map.of(Gender.MALE, 2L, Gender.FEMALE, 1L), Map.of("gmail.com", 3L), null, 0));
+
+        mockMvc.perform(get("/api/v1/students/stats"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.total", is(3)))
+                .andExpect(jsonPath("$.byGender.MALE", is(2)))
+                .andExpect(jsonPath("$.byEmailDomain['gmail.com']", is(3)));
+    }
+
+    @Test
+    void testAddStudents() throws Exception {
+        // one created and one rejected student
+        List<Student> students = List.of(
+                new Student("John", "john@gmail.com", Gender.MALE),
+                new Student("Jane", "john@gmail.com", Gender.FEMALE));
+        when(studentService.addStudents(students)).thenReturn(List.of(
+                StudentBatchResult.created(0, 1L),
+                StudentBatchResult.emailTaken(1, "john@gmail.com")));
+
+        // perform the POST request
+        mockMvc.perform(post("/api/v1/students/batch")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(asJsonString(students)))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$[0].status", is("CREATED")))
+                .andExpect(jsonPath("$[0].id", is(1)))
+                .andExpect(jsonPath("$[1].status", is("EMAIL_TAKEN")))
+                .andExpect(jsonPath("$[1].message", is("Email john@gmail.com taken")));
+
+        // verify that studentService.addStudents() was called with the request body
+        verify(studentService, times(1)).addStudents(students);
+    }
+
+    @Test
+    void testDeleteStudents() throws Exception {
+        // id 2 does not exist
+        when(studentService.deleteStudents(List.of(1L, 2L)))
+                .thenReturn(new StudentDeleteResult(1, List.of(2L)));
+
+        // perform the POST request with the ids as body
+        mockMvc.perform(post("/api/v1/students/delete-batch")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("[1, 2]"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.deleted", is(1)))
+                .andExpect(jsonPath("$.missingIds[0]", is(2)));
+    }
+
     @Test
     public void testDeleteStudent() throws Exception {
         Long studentId = 1L;
 
         // configure the mock behavior of studentService.deleteStudent()
-        doNothing().when(studentService).deleteStudent(studentId);
+        doNothing().when(studentService).deleteStudent(studentId, null);
 
         // perform the DELETE request
         mockMvc.perform(delete("/api/v1/students/{studentId}", studentId))
                 .andExpect(status().isNoContent());
 
         // verify that the studentService.deleteStudent() method was called with the correct argument
-        verify(studentService, times(1)).deleteStudent(studentId);
+        verify(studentService, times(1)).deleteStudent(studentId, null);
     }
 
     @Test
@@ -110,14 +513,31 @@ public class StudentControllerTest {
         // perform the GET request
         mockMvc.perform(get("/api/v1/students/1"))
                 .andExpect(status().isOk())
+                .andExpect(header().string(HttpHeaders.ETAG, "\"0\""))
                 .andExpect(jsonPath("$.id", is(1)))
                 .andExpect(jsonPath("$.name", is("John")))
-                .andExpect(jsonPath("$.email", is("john@gmail.com")));
+                .andExpect(jsonPath("$.email", is("john@gmail.com")))
+                .andExpect(jsonPath("$.version").doesNotExist());
 
         // verify that studentService.getStudentById() was called with the correct argument
         verify(studentService, times(1)).getStudentById(1L);
     }
 
+    @Test
+    void testGetStudentByIdNotModified() throws Exception {
+        // a student at version 2
+        Student student = new Student("John", "john@gmail.com", Gender.MALE);
+        student.setId(1L);
+        student.setVersion(2L);
+        when(studentService.getStudentById(1L)).thenReturn(Optional.of(student));
+
+        // perform the GET request with the current ETag
+        mockMvc.perform(get("/api/v1/students/1")
+                        .header(HttpHeaders.IF_NONE_MATCH, "\"2\""))
+                .andExpect(status().isNotModified())
+                .andExpect(content().string(""));
+    }
+
     @Test
     void testGetStudentByIdNotFound() throws Exception {
         // mock the studentService.getStudentById() method to return an empty Optional
@@ -137,13 +557,8 @@ public class StudentControllerTest {
         Student updatedStudent = new Student("John", "john@gmail.com", Gender.MALE);
         updatedStudent.setId(1L);
 
-        // mock the studentService.getStudentById() method to return a non-empty Optional
-        Student originalStudent = new Student("JohnDoe", "john@gmail.com", Gender.MALE);
-        originalStudent.setId(1L);
-        when(studentService.getStudentById(1L)).thenReturn(Optional.of(originalStudent));
-
         // mock the studentService.saveEditStudent() method to return the updated student object
-        when(studentService.saveEditStudent(updatedStudent, 1L)).thenReturn(updatedStudent);
+        when(studentService.saveEditStudent(updatedStudent, 1L, null)).thenReturn(updatedStudent);
 
         // perform the PUT request
         mockMvc.perform(put("/api/v1/students/1")
@@ -154,9 +569,55 @@ public class StudentControllerTest {
                 .andExpect(jsonPath("$.name", is("John")))
                 .andExpect(jsonPath("$.email", is("john@gmail.com")));
 
-        // verify that studentService.getStudentById() and studentService.saveEditStudent() were called with the correct arguments
-        verify(studentService, times(1)).getStudentById(1L);
-        verify(studentService, times(1)).saveEditStudent(updatedStudent, 1L);
+        // verify that the update went straight to studentService.saveEditStudent()
+        verify(studentService, times(1)).saveEditStudent(updatedStudent, 1L, null);
+        verifyNoMoreInteractions(studentService);
+    }
+
+    @Test
+    void testUpdateStudentByIdIfMatch() throws Exception {
+        // the student to update, which the service reports at its next version
+        Student student = new Student("John", "john@gmail.com", Gender.MALE);
+        Student updatedStudent = new Student("John", "john@gmail.com", Gender.MALE);
+        updatedStudent.setId(1L);
+        updatedStudent.setVersion(4L);
+        when(studentService.saveEditStudent(student, 1L, 3L)).thenReturn(updatedStudent);
+
+        // perform the PUT request against version 3
+        mockMvc.perform(put("/api/v1/students/1")
+                        .header(HttpHeaders.IF_MATCH, "\"3\"")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(asJsonString(student)))
+                .andExpect(status().isOk())
+                .andExpect(header().string(HttpHeaders.ETAG, "\"4\""));
+
+        // verify that the expected version was passed on
+        verify(studentService, times(1)).saveEditStudent(student, 1L, 3L);
+    }
+
+    @Test
+    void testUpdateStudentByIdPreconditionFailed() throws Exception {
+        // mock the studentService.saveEditStudent() method to report another version
+        Student student = new Student("John", "john@gmail.com", Gender.MALE);
+        when(studentService.saveEditStudent(student, 1L, 3L))
+                .thenThrow(new PreconditionFailedException("Student with id 1 is not at version 3"));
+
+        // perform the PUT request against a stale version
+        mockMvc.perform(put("/api/v1/students/1")
+                        .header(HttpHeaders.IF_MATCH, "\"3\"")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(asJsonString(student)))
+                .andExpect(status().isPreconditionFailed());
+    }
+
+    @Test
+    void testDeleteStudentWithWeakIfMatch() throws Exception {
+        // weak tags never satisfy If-Match
+        mockMvc.perform(delete("/api/v1/students/{studentId}", 1L)
+                        .header(HttpHeaders.IF_MATCH, "W/\"3\""))
+                .andExpect(status().isPreconditionFailed());
+
+        verifyNoInteractions(studentService);
     }
 
     @Test
@@ -164,8 +625,9 @@ public class StudentControllerTest {
         // create a Student object to represent the updated student data
         Student updatedStudent = new Student("John", "john@gmail.com", Gender.MALE);
 
-        // mock the studentService.getStudentById() method to return an empty Optional
-        when(studentService.getStudentById(1L)).thenReturn(Optional.empty());
+        // mock the studentService.saveEditStudent() method to report a missing student
+        when(studentService.saveEditStudent(updatedStudent, 1L, null))
+                .thenThrow(new StudentNotFoundException("Student with id 1 does not exists"));
 
         // perform the PUT request
         mockMvc.perform(put("/api/v1/students/1")
@@ -173,13 +635,72 @@ public class StudentControllerTest {
                         .content(new ObjectMapper().writeValueAsString(updatedStudent)))
                 .andExpect(status().isNotFound());
 
-        // verify that studentService.getStudentById() was called with the correct argument
-        verify(studentService, times(1)).getStudentById(1L);
-
-        // verify that studentService.saveEditStudent() was not called
+        // verify that studentService.saveEditStudent() was called with the correct arguments
+        verify(studentService, times(1)).saveEditStudent(updatedStudent, 1L, null);
         verifyNoMoreInteractions(studentService);
     }
 
+    @Test
+    void testGetStudentPage() throws Exception {
+        // create a page of one student with a cursor to the next page
+        Student student = new Student("Jane", "jane@gmail.com", Gender.FEMALE);
+        student.setId(2L);
+        StudentPage page = new StudentPage(List.of(student), StudentCursor.encode(2L));
+        when(studentService.getStudentPage("abc", 1, Gender.FEMALE)).thenReturn(page);
+
+        // perform the GET request
+        mockMvc.perform(get("/api/v1/students/page")
+                        .param("cursor", "abc")
+                        .param("size", "1")
+                        .param("gender", "FEMALE"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.students.size()", is(1)))
+                .andExpect(jsonPath("$.students[0].id", is(2)))
+                .andExpect(jsonPath("$.nextCursor", is(page.getNextCursor())));
+
+        // verify that studentService.getStudentPage() was called with the request parameters
+        verify(studentService, times(1)).getStudentPage("abc", 1, Gender.FEMALE);
+    }
+
+    @Test
+    void testExportStudents() throws Exception {
+        // stream two students to the consumer handed to studentService.exportStudents()
+        doAnswer(invocation -> {
+            Consumer<Student> sink = invocation.getArgument(0);
+            sink.accept(new Student("John", "john@gmail.com", Gender.MALE));
+            sink.accept(new Student("Jane", "jane@gmail.com", Gender.FEMALE));
+            return null;
+        }).when(studentService).exportStudents(any());
+
+        // perform the GET request, the body is written asynchronously
+        MvcResult result = mockMvc.perform(get("/api/v1/students/export"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        // one JSON document per line
+        mockMvc.perform(asyncDispatch(result))
+                .andExpect(status().isOk())
+                .andExpect(content().contentType(MediaType.APPLICATION_NDJSON))
+                .andExpect(content().string(
+                        "{\"id\":null,\"name\":\"John\",\"email\":\"john@gmail.com\",\"gender\":\"MALE\"}\n" +
+                        "{\"id\":null,\"name\":\"Jane\",\"email\":\"jane@gmail.com\",\"gender\":\"FEMALE\"}\n"));
+    }
+
+    /**
+     * A MockMvc carrying the JSON converter plus the binary ones added by
+     * {@link BinaryContentConfig}.
+     */
+    private MockMvc binaryMockMvc() {
+        List<HttpMessageConverter<?>> converters = new ArrayList<>();
+        converters.add(new MappingJackson2HttpMessageConverter());
+        new BinaryContentConfig(beanFactory.getBeanProvider(Jackson2ObjectMapperBuilder.class))
+                .extendMessageConverters(converters);
+        return MockMvcBuilders.standaloneSetup(new StudentController(
+                        studentService, new ObjectMapper(), beanFactory.getBeanProvider(StudentIngestQueue.class),
+                        studentListCache, studentImporter, studentChangeFeed, studentIdempotencyStore))
+                .setMessageConverters(converters.toArray(new HttpMessageConverter<?>[0]))
+                .build();
+    }
 
     private static String asJsonString(final Object obj) {
         try {
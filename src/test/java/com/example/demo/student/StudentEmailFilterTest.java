@@ -0,0 +1,73 @@
+package com.example.demo.student;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.AssertionsForClassTypes.assertThat;
+import static org.mockito.BDDMockito.given;
+
+@ExtendWith(MockitoExtension.class)
+class StudentEmailFilterTest {
+
+    @Mock
+    private StudentRepository studentRepository;
+    @Mock
+    private PlatformTransactionManager transactionManager;
+    private StudentEmailFilter underTest;
+
+    @BeforeEach
+    void setUp() {
+        underTest = new StudentEmailFilter(
+                studentRepository, transactionManager, 1000, 0.01, 0.1);
+    }
+
+    @Test
+    void itShouldReportEveryEmailAsPossibleBeforeWarmUp() {
+        assertThat(underTest.mightContain("ninh@gmail.com")).isTrue();
+        assertThat(underTest.hitRatio()).isEqualTo(0.0);
+    }
+
+    @Test
+    void itShouldRuleOutUnknownEmailsAfterRebuild() {
+        //given
+        given(studentRepository.streamAllEmails())
+                .willReturn(Stream.of("ninh@gmail.com", "Thanh@gmail.com"));
+
+        //when
+        underTest.rebuild();
+
+        //then
+        assertThat(underTest.mightContain("ninh@gmail.com")).isTrue();
+        assertThat(underTest.mightContain("thanh@GMAIL.com")).isTrue();
+        assertThat(underTest.mightContain("dang@gmail.com")).isFalse();
+        assertThat(underTest.hitRatio()).isGreaterThan(0.0);
+    }
+
+    @Test
+    void itShouldAddEmailsAfterCommit() {
+        //given
+        given(studentRepository.streamAllEmails()).willReturn(Stream.empty());
+        underTest.rebuild();
+
+        //when
+        TransactionSynchronizationManager.initSynchronization();
+        try {
+            underTest.add("ninh@gmail.com");
+            assertThat(underTest.mightContain("ninh@gmail.com")).isFalse();
+            TransactionSynchronizationManager.getSynchronizations()
+                    .forEach(synchronization -> synchronization.afterCommit());
+        } finally {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+
+        //then
+        assertThat(underTest.mightContain("ninh@gmail.com")).isTrue();
+    }
+}
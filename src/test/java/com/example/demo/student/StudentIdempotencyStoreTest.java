@@ -0,0 +1,162 @@
+package com.example.demo.student;
+
+import com.example.demo.student.exception.BadRequestException;
+import com.example.demo.student.exception.ConflictException;
+import com.example.demo.student.exception.UnprocessableEntityException;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class StudentIdempotencyStoreTest {
+
+    private static final String OPERATION = "POST /api/v1/students";
+
+    private final StudentIdempotencyStore underTest = new StudentIdempotencyStore(
+            100, Duration.ofMinutes(1), Duration.ofSeconds(5));
+
+    @Test
+    void canReplayResponseForSameKey() {
+        //given
+        AtomicInteger writes = new AtomicInteger();
+
+        //when
+        ResponseEntity<String> first = underTest.execute("abc", OPERATION, List.of("John"),
+                () -> ResponseEntity.status(HttpStatus.CREATED).body("created " + writes.incrementAndGet()));
+        ResponseEntity<String> second = underTest.execute("abc", OPERATION, List.of("John"),
+                () -> ResponseEntity.status(HttpStatus.CREATED).body("created " + writes.incrementAndGet()));
+
+        //then
+        assertThat(writes).hasValue(1);
+        assertThat(second.getStatusCode()).isEqualTo(HttpStatus.CREATED);
+        assertThat(second.getBody()).isEqualTo(first.getBody());
+        assertThat(second.getHeaders().getFirst(StudentIdempotencyStore.REPLAYED)).isEqualTo("true");
+    }
+
+    @Test
+    void willRejectKeyReusedForAnotherRequest() {
+        //given
+        underTest.execute("abc", OPERATION, List.of("John"), () -> ResponseEntity.ok("created"));
+
+        //when
+        //then
+        assertThatThrownBy(() -> underTest.execute("abc", OPERATION, List.of("Jane"),
+                () -> ResponseEntity.ok("created")))
+                .isInstanceOf(UnprocessableEntityException.class);
+        assertThatThrownBy(() -> underTest.execute("abc", "PUT /api/v1/students/1", List.of("John"),
+                () -> ResponseEntity.ok("updated")))
+                .isInstanceOf(UnprocessableEntityException.class);
+    }
+
+    @Test
+    void willReplayClientErrorButRetryServerError() {
+        //given
+        AtomicInteger writes = new AtomicInteger();
+
+        //when
+        for (int i = 0; i < 2; i++) {
+            assertThatThrownBy(() -> underTest.execute("taken", OPERATION, List.of("John"), () -> {
+                writes.incrementAndGet();
+                throw new BadRequestException("Email john@gmail.com taken");
+            })).isInstanceOf(BadRequestException.class);
+            assertThatThrownBy(() -> underTest.execute("down", OPERATION, List.of("John"), () -> {
+                writes.incrementAndGet();
+                throw new IllegalStateException("database down");
+            })).isInstanceOf(IllegalStateException.class);
+        }
+
+        //then
+        assertThat(writes).hasValue(3);
+    }
+
+    @Test
+    void canCoalesceConcurrentRequestsWithSameKey() throws Exception {
+        //given
+        AtomicInteger writes = new AtomicInteger();
+        CountDownLatch writing = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        ExecutorService other = Executors.newSingleThreadExecutor();
+        Future<ResponseEntity<String>> first = other.submit(() ->
+                underTest.execute("abc", OPERATION, List.of("John"), () -> {
+                    writes.incrementAndGet();
+                    writing.countDown();
+                    await(release);
+                    return ResponseEntity.ok("created");
+                }));
+        writing.await(5, TimeUnit.SECONDS);
+
+        //when
+        Thread releaser = new Thread(() -> {
+            sleep(100);
+            release.countDown();
+        });
+        releaser.start();
+        ResponseEntity<String> second = underTest.execute("abc", OPERATION, List.of("John"), () -> {
+            writes.incrementAndGet();
+            return ResponseEntity.ok("created again");
+        });
+
+        //then
+        try {
+            assertThat(second.getBody()).isEqualTo("created");
+            assertThat(first.get(5, TimeUnit.SECONDS).getBody()).isEqualTo("created");
+            assertThat(writes).hasValue(1);
+        } finally {
+            other.shutdown();
+        }
+    }
+
+    @Test
+    void willGiveUpWaitingForSlowRequest() throws Exception {
+        //given
+        StudentIdempotencyStore impatient = new StudentIdempotencyStore(
+                100, Duration.ofMinutes(1), Duration.ofMillis(50));
+        CountDownLatch writing = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        ExecutorService other = Executors.newSingleThreadExecutor();
+        other.submit(() -> impatient.execute("abc", OPERATION, List.of("John"), () -> {
+            writing.countDown();
+            await(release);
+            return ResponseEntity.ok("created");
+        }));
+        writing.await(5, TimeUnit.SECONDS);
+
+        //when
+        //then
+        try {
+            assertThatThrownBy(() -> impatient.execute("abc", OPERATION, List.of("John"),
+                    () -> ResponseEntity.ok("created again")))
+                    .isInstanceOf(ConflictException.class);
+        } finally {
+            release.countDown();
+            other.shutdown();
+        }
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
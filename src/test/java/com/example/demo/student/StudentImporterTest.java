@@ -0,0 +1,175 @@
+package com.example.demo.student;
+
+import com.example.demo.student.exception.BadRequestException;
+import com.example.demo.student.exception.TooManyRequestsException;
+import com.google.common.util.concurrent.MoreExecutors;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Captor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.dao.DataIntegrityViolationException;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.assertj.core.api.Assertions.tuple;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.BDDMockito.willThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
+
+@ExtendWith(MockitoExtension.class)
+class StudentImporterTest {
+
+    @Mock
+    private StudentService studentService;
+
+    @Captor
+    private ArgumentCaptor<List<Student>> chunks;
+
+    @Test
+    void canImportInChunks() {
+        //given
+        StudentImporter underTest = directImporter(2);
+        given(studentService.addStudents(anyList())).willAnswer(invocation -> {
+            List<Student> chunk = invocation.getArgument(0);
+            return IntStream.range(0, chunk.size())
+                    .mapToObj(i -> StudentBatchResult.created(i, (long) i))
+                    .collect(Collectors.toList());
+        });
+
+        //when
+        StudentImportStatus queued = underTest.submit(csv("\uFEFFName,Email,Gender\n"
+                + "John,john@gmail.com,MALE\n"
+                + "Jane,jane@gmail.com,female\n"
+                + "\n"
+                + "Jack,jack@gmail.com,MALE\n"));
+
+        //then
+        verify(studentService, times(2)).addStudents(chunks.capture());
+        assertThat(chunks.getAllValues().get(0)).extracting(Student::getName, Student::getGender)
+                .containsExactly(
+                        tuple("John", Gender.MALE),
+                        tuple("Jane", Gender.FEMALE));
+        assertThat(underTest.getStatus(queued.getJobId())).hasValueSatisfying(status -> {
+            assertThat(status.getState()).isEqualTo(StudentImportStatus.State.COMPLETED);
+            assertThat(status.getRowsRead()).isEqualTo(3);
+            assertThat(status.getCreated()).isEqualTo(3);
+            assertThat(status.getErrors()).isEmpty();
+            assertThat(status.getFinishedAt()).isNotNull();
+        });
+    }
+
+    @Test
+    void willReportRejectedRowsByRowNumber() {
+        //given
+        StudentImporter underTest = directImporter(10);
+        given(studentService.addStudents(anyList())).willReturn(List.of(
+                StudentBatchResult.created(0, 1L),
+                StudentBatchResult.emailTaken(1, "john@gmail.com")));
+
+        //when
+        StudentImportStatus queued = underTest.submit(csv("name,email,gender\n"
+                + "John,john@gmail.com,MALE\n"
+                + "Jim,jim@gmail.com,UNKNOWN\n"
+                + "Jake,jake@gmail.com\n"
+                + "Jane,john@gmail.com,FEMALE\n"));
+
+        //then
+        assertThat(underTest.getStatus(queued.getJobId())).hasValueSatisfying(status -> {
+            assertThat(status.getState()).isEqualTo(StudentImportStatus.State.COMPLETED);
+            assertThat(status.getRowsRead()).isEqualTo(4);
+            assertThat(status.getCreated()).isEqualTo(1);
+            assertThat(status.getInvalid()).isEqualTo(2);
+            assertThat(status.getEmailTaken()).isEqualTo(1);
+            assertThat(status.getErrors()).containsExactly(
+                    "row 2: gender UNKNOWN is unknown",
+                    "row 3: expected 3 columns but found 2",
+                    "row 4: Email john@gmail.com taken");
+        });
+    }
+
+    @Test
+    void willKeepImportingWhenAnEmailIsTakenConcurrently() {
+        //given
+        StudentImporter underTest = directImporter(10);
+        Student john = new Student("John", "john@gmail.com", Gender.MALE);
+        Student jane = new Student("Jane", "jane@gmail.com", Gender.FEMALE);
+        given(studentService.addStudents(List.of(john, jane)))
+                .willThrow(new DataIntegrityViolationException("duplicate email"));
+        given(studentService.addStudents(List.of(john)))
+                .willReturn(List.of(StudentBatchResult.created(0, 1L)));
+        given(studentService.addStudents(List.of(jane)))
+                .willThrow(new DataIntegrityViolationException("duplicate email"));
+        given(studentService.addStudent(jane))
+                .willThrow(new BadRequestException("Email jane@gmail.com taken"));
+
+        //when
+        StudentImportStatus queued = underTest.submit(csv("name,email,gender\n"
+                + "John,john@gmail.com,MALE\n"
+                + "Jane,jane@gmail.com,FEMALE\n"));
+
+        //then
+        assertThat(underTest.getStatus(queued.getJobId())).hasValueSatisfying(status -> {
+            assertThat(status.getState()).isEqualTo(StudentImportStatus.State.COMPLETED);
+            assertThat(status.getCreated()).isEqualTo(1);
+            assertThat(status.getEmailTaken()).isEqualTo(1);
+            assertThat(status.getErrors()).containsExactly("row 2: Email jane@gmail.com taken");
+        });
+    }
+
+    @Test
+    void willFailWithoutRequiredColumns() {
+        //given
+        StudentImporter underTest = directImporter(10);
+
+        //when
+        StudentImportStatus queued = underTest.submit(csv("name,email\nJohn,john@gmail.com\n"));
+
+        //then
+        assertThat(underTest.getStatus(queued.getJobId())).hasValueSatisfying(status -> {
+            assertThat(status.getState()).isEqualTo(StudentImportStatus.State.FAILED);
+            assertThat(status.getMessage()).isEqualTo("CSV header must contain name,email,gender");
+        });
+        verifyNoInteractions(studentService);
+    }
+
+    @Test
+    void willRejectImportWhenQueueFull() {
+        //given
+        ExecutorService executor = mock(ExecutorService.class);
+        willThrow(new RejectedExecutionException()).given(executor).execute(any());
+        StudentImporter underTest = new StudentImporter(
+                new StudentBatchWriter(studentService), executor, 10, 100, Duration.ofMinutes(1));
+
+        //when
+        //then
+        assertThatThrownBy(() -> underTest.submit(csv("name,email,gender\n")))
+                .isInstanceOf(TooManyRequestsException.class)
+                .hasMessageContaining("Too many student imports queued");
+    }
+
+    private StudentImporter directImporter(int chunkSize) {
+        return new StudentImporter(new StudentBatchWriter(studentService),
+                MoreExecutors.newDirectExecutorService(), chunkSize, 100, Duration.ofMinutes(1));
+    }
+
+    private static InputStream csv(String content) {
+        return new ByteArrayInputStream(content.getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,122 @@
+package com.example.demo.student;
+
+import com.example.demo.student.exception.ServiceUnavailableException;
+import com.example.demo.student.exception.TooManyRequestsException;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Captor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Mockito.verify;
+
+@ExtendWith(MockitoExtension.class)
+class StudentIngestQueueTest {
+
+    @Mock
+    private StudentService studentService;
+
+    @Captor
+    private ArgumentCaptor<List<Student>> batch;
+
+    private StudentIngestQueue underTest;
+
+    @AfterEach
+    void tearDown() throws InterruptedException {
+        underTest.stop();
+    }
+
+    @Test
+    void canWriteQueuedStudentsInOneBatch() throws InterruptedException {
+        //given
+        underTest = new StudentIngestQueue(new StudentBatchWriter(studentService), 10, 10, 200, Duration.ofMinutes(1));
+        given(studentService.addStudents(anyList())).willReturn(List.of(
+                StudentBatchResult.created(0, 1L),
+                StudentBatchResult.emailTaken(1, "john@gmail.com")));
+        underTest.start();
+
+        //when
+        StudentIngestStatus first = underTest.submit(new Student("John", "john@gmail.com", Gender.MALE));
+        StudentIngestStatus second = underTest.submit(new Student("Jane", "john@gmail.com", Gender.FEMALE));
+        underTest.stop();
+
+        //then
+        assertThat(first.getState()).isEqualTo(StudentIngestStatus.State.PENDING);
+        verify(studentService).addStudents(batch.capture());
+        assertThat(batch.getValue()).extracting(Student::getName).containsExactly("John", "Jane");
+        assertThat(underTest.getStatus(first.getTrackingId())).hasValueSatisfying(status -> {
+            assertThat(status.getState()).isEqualTo(StudentIngestStatus.State.CREATED);
+            assertThat(status.getId()).isEqualTo(1L);
+        });
+        assertThat(underTest.getStatus(second.getTrackingId())).hasValueSatisfying(status ->
+                assertThat(status.getState()).isEqualTo(StudentIngestStatus.State.EMAIL_TAKEN));
+    }
+
+    @Test
+    void willReportFailedBatch() throws InterruptedException {
+        //given
+        underTest = new StudentIngestQueue(new StudentBatchWriter(studentService), 10, 10, 0, Duration.ofMinutes(1));
+        given(studentService.addStudents(anyList())).willThrow(new IllegalStateException("database down"));
+        underTest.start();
+
+        //when
+        StudentIngestStatus pending = underTest.submit(new Student("John", "john@gmail.com", Gender.MALE));
+        underTest.stop();
+
+        //then
+        assertThat(underTest.getStatus(pending.getTrackingId())).hasValueSatisfying(status -> {
+            assertThat(status.getState()).isEqualTo(StudentIngestStatus.State.FAILED);
+            assertThat(status.getMessage()).isEqualTo("database down");
+        });
+    }
+
+    @Test
+    void willThrowWhenQueueIsFull() {
+        //given
+        underTest = new StudentIngestQueue(new StudentBatchWriter(studentService), 1, 10, 0, Duration.ofMinutes(1));
+        // the writer is stuck on its first batch
+        CountDownLatch release = new CountDownLatch(1);
+        given(studentService.addStudents(anyList())).willAnswer(invocation -> {
+            release.await();
+            return List.of();
+        });
+        underTest.start();
+
+        //when
+        //then
+        try {
+            assertThatThrownBy(() -> {
+                // at most one batch of 10 in the writer and one queued
+                for (int i = 0; i < 20; i++) {
+                    underTest.submit(new Student("Jane" + i, "jane" + i + "@gmail.com", Gender.FEMALE));
+                }
+            })
+                    .isInstanceOf(TooManyRequestsException.class)
+                    .hasMessageContaining("queue is full");
+        } finally {
+            release.countDown();
+        }
+    }
+
+    @Test
+    void willThrowWhenNotRunning() {
+        //given
+        underTest = new StudentIngestQueue(new StudentBatchWriter(studentService), 10, 10, 0, Duration.ofMinutes(1));
+
+        //when
+        //then
+        assertThatThrownBy(() -> underTest.submit(new Student("John", "john@gmail.com", Gender.MALE)))
+                .isInstanceOf(ServiceUnavailableException.class);
+        assertThat(underTest.getStatus("unknown")).isEmpty();
+    }
+}
@@ -0,0 +1,98 @@
+package com.example.demo.student;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+import java.util.zip.GZIPInputStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class StudentListCacheTest {
+
+    private final AtomicLong nanoTime = new AtomicLong();
+    private final AtomicInteger loads = new AtomicInteger();
+    private final StudentListCache underTest = new StudentListCache(
+            new ObjectMapper(), Duration.ofSeconds(30), nanoTime::get);
+
+    private List<Student> students = List.of(new Student(1L, "Ninh", "ninh@gmail.com", Gender.MALE, 0L));
+    private final Supplier<List<Student>> loader = () -> {
+        loads.incrementAndGet();
+        return students;
+    };
+
+    @Test
+    void canServeSameBodyUntilChanged() throws IOException {
+        //given
+        StudentListCache.Body first = underTest.get(loader);
+
+        //when
+        StudentListCache.Body second = underTest.get(loader);
+
+        //then
+        assertThat(second).isSameAs(first);
+        assertThat(loads.get()).isEqualTo(1);
+        assertThat(new String(first.getJson()))
+                .isEqualTo("[{\"id\":1,\"name\":\"Ninh\",\"email\":\"ninh@gmail.com\",\"gender\":\"MALE\"}]");
+        assertThat(new GZIPInputStream(new ByteArrayInputStream(first.getGzip())).readAllBytes())
+                .isEqualTo(first.getJson());
+        assertThat(first.getETag()).startsWith("W/\"");
+    }
+
+    @Test
+    void willReloadAfterChange() {
+        //given
+        StudentListCache.Body first = underTest.get(loader);
+        students = List.of();
+
+        //when
+        underTest.recordChange();
+        StudentListCache.Body second = underTest.get(loader);
+
+        //then
+        assertThat(loads.get()).isEqualTo(2);
+        assertThat(second.getVersion()).isEqualTo(first.getVersion() + 1);
+        assertThat(second.getETag()).isNotEqualTo(first.getETag());
+    }
+
+    @Test
+    void willReloadWhenTooOldKeepingETagOfSameContent() {
+        //given
+        StudentListCache.Body first = underTest.get(loader);
+
+        //when
+        nanoTime.addAndGet(Duration.ofSeconds(30).toNanos());
+        StudentListCache.Body second = underTest.get(loader);
+
+        //then
+        assertThat(loads.get()).isEqualTo(2);
+        assertThat(second).isNotSameAs(first);
+        assertThat(second.getETag()).isEqualTo(first.getETag());
+    }
+
+    @Test
+    void willBumpVersionOnlyAfterCommit() {
+        //given
+        TransactionSynchronizationManager.initSynchronization();
+        try {
+            //when
+            underTest.recordChange();
+
+            //then
+            assertThat(underTest.getVersion()).isZero();
+            TransactionSynchronizationManager.getSynchronizations()
+                    .forEach(TransactionSynchronization::afterCommit);
+            assertThat(underTest.getVersion()).isEqualTo(1);
+        } finally {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+    }
+}
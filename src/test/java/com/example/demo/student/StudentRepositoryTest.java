@@ -4,7 +4,16 @@ import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.data.domain.PageRequest;
 
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
 import static org.assertj.core.api.AssertionsForClassTypes.assertThat;
 
 
@@ -14,6 +23,9 @@ class StudentRepositoryTest {
     @Autowired
     private StudentRepository underTest;
 
+    @Autowired
+    private TestEntityManager entityManager;
+
     @AfterEach
     void tearDown() {
         underTest.deleteAll();
@@ -58,7 +70,7 @@ class StudentRepositoryTest {
                 email1,
                 Gender.MALE
         );
-        underTest.save(student1);
+        Long studentId = underTest.save(student1).getId();
 
         String email2 = "thanh@gmail.com";
         Student student2 = new Student(
@@ -77,7 +89,6 @@ class StudentRepositoryTest {
         underTest.save(student3);
 
         //when
-        Long studentId = 1L;
         Boolean expected = underTest.selectConflictEmail("dang@gmail.com", studentId);
         //if not conflict --> false
         //if conflict --> true
@@ -95,7 +106,7 @@ class StudentRepositoryTest {
                 email1,
                 Gender.MALE
         );
-        underTest.save(student1);
+        Long studentId = underTest.save(student1).getId();
 
         String email2 = "thanh@gmail.com";
         Student student2 = new Student(
@@ -114,7 +125,6 @@ class StudentRepositoryTest {
         underTest.save(student3);
 
         //when
-        Long studentId = 1L;
         Boolean expected = underTest.selectConflictEmail("ninh@gmail.com", studentId);
 
         //then
@@ -122,4 +132,152 @@ class StudentRepositoryTest {
         //false is NOT conflict
         //true is conflict
     }
-}
\ No newline at end of file
+
+    @Test
+    void itShouldSeekPageAfterId() {
+        //give
+        Student student1 = underTest.save(new Student("Ninh", "ninh@gmail.com", Gender.MALE));
+        Student student2 = underTest.save(new Student("Thanh", "thanh@gmail.com", Gender.FEMALE));
+        Student student3 = underTest.saveAndFlush(new Student("Dang", "dang@gmail.com", Gender.FEMALE));
+
+        //when
+        List<Student> page = underTest.selectPageAfter(student1.getId(), PageRequest.of(0, 1));
+        List<Student> females = underTest.selectPageAfterByGender(
+                student1.getId(), Gender.FEMALE, PageRequest.of(0, 10));
+
+        //then
+        assertThat(page).isEqualTo(List.of(student2));
+        assertThat(females).isEqualTo(List.of(student2, student3));
+    }
+
+    @Test
+    void itShouldSelectIdByEmail() {
+        //give
+        Long studentId = underTest.save(new Student("Ninh", "ninh@gmail.com", Gender.MALE)).getId();
+
+        //when
+        Optional<Long> holder = underTest.selectIdByEmail("ninh@gmail.com");
+        Optional<Long> nobody = underTest.selectIdByEmail("dang@gmail.com");
+
+        //then
+        assertThat(holder).isEqualTo(Optional.of(studentId));
+        assertThat(nobody).isEqualTo(Optional.empty());
+    }
+
+    @Test
+    void itShouldSelectExistingEmails() {
+        //give
+        underTest.save(new Student("Ninh", "ninh@gmail.com", Gender.MALE));
+        underTest.save(new Student("Thanh", "thanh@gmail.com", Gender.FEMALE));
+
+        //when
+        List<String> existing = underTest.selectExistingEmails(
+                List.of("ninh@gmail.com", "dang@gmail.com"));
+
+        //then
+        assertThat(existing).isEqualTo(List.of("ninh@gmail.com"));
+    }
+
+    @Test
+    void itShouldRejectDuplicateEmailOnInsert() {
+        //give
+        underTest.saveAndFlush(new Student("Ninh", "ninh@gmail.com", Gender.MALE));
+
+        //then
+        assertThatThrownBy(() -> underTest.saveAndFlush(
+                new Student("Thanh", "ninh@gmail.com", Gender.FEMALE)))
+                .isInstanceOf(DataIntegrityViolationException.class);
+    }
+
+    @Test
+    void itShouldSearchByNamePrefixAndGender() {
+        //give
+        Student ninh = underTest.save(new Student("Ninh", "ninh@gmail.com", Gender.MALE));
+        underTest.save(new Student("Nina", "nina@gmail.com", Gender.FEMALE));
+        Student nick = underTest.save(new Student("Nick", "nick@gmail.com", Gender.MALE));
+        underTest.saveAndFlush(new Student("Thanh", "thanh@gmail.com", Gender.MALE));
+
+        //when
+        List<StudentSummary> found = underTest.search("Ni", Gender.MALE, null, 10);
+        List<StudentSummary> limited = underTest.search("Ni", null, null, 1);
+
+        //then
+        assertThat(found).isEqualTo(List.of(
+                new StudentSummary(nick.getId(), "Nick", "nick@gmail.com", Gender.MALE),
+                new StudentSummary(ninh.getId(), "Ninh", "ninh@gmail.com", Gender.MALE)));
+        assertThat(limited.size()).isEqualTo(1);
+    }
+
+    @Test
+    void itShouldTreatLikeWildcardsInNamePrefixLiterally() {
+        //give
+        underTest.save(new Student("N_nh", "ninh@gmail.com", Gender.MALE));
+        underTest.saveAndFlush(new Student("Ninh", "thanh@gmail.com", Gender.MALE));
+
+        //when
+        List<StudentSummary> found = underTest.search("N_", null, null, 10);
+        List<StudentSummary> percent = underTest.search("%", null, null, 10);
+
+        //then
+        assertThat(found.size()).isEqualTo(1);
+        assertThat(found.get(0).getName()).isEqualTo("N_nh");
+        assertThat(percent.isEmpty()).isTrue();
+    }
+
+    @Test
+    void itShouldSearchByEmailDomainKeptInStepWithUpdates() {
+        //give
+        Student student = underTest.saveAndFlush(new Student("Ninh", "ninh@Example.com", Gender.MALE));
+
+        //when
+        List<StudentSummary> before = underTest.search(null, null, "example.com", 10);
+        underTest.updateStudent(student.getId(), "Ninh", "ninh@other.org", Gender.MALE);
+        List<StudentSummary> oldDomain = underTest.search(null, null, "example.com", 10);
+        List<StudentSummary> newDomain = underTest.search(null, null, "other.org", 10);
+
+        //then
+        assertThat(before.size()).isEqualTo(1);
+        assertThat(oldDomain.isEmpty()).isTrue();
+        assertThat(newDomain.size()).isEqualTo(1);
+        assertThat(newDomain.get(0).getEmail()).isEqualTo("ninh@other.org");
+    }
+
+    @Test
+    void itShouldCountStudentsByGenderAndEmailDomain() {
+        //give
+        underTest.save(new Student("Ninh", "ninh@gmail.com", Gender.MALE));
+        underTest.save(new Student("Thanh", "thanh@gmail.com", Gender.MALE));
+        underTest.save(new Student("Jane", "jane@other.org", Gender.FEMALE));
+
+        //when
+        Map<Gender, Long> byGender = underTest.countByGender().stream()
+                .collect(Collectors.toMap(StudentRepository.GenderCount::getKey, StudentRepository.GenderCount::getTotal));
+        Map<String, Long> byDomain = underTest.countByEmailDomain().stream()
+                .collect(Collectors.toMap(StudentRepository.EmailDomainCount::getKey, StudentRepository.EmailDomainCount::getTotal));
+
+        //then
+        assertThat(byGender).isEqualTo(Map.of(Gender.MALE, 2L, Gender.FEMALE, 1L));
+        assertThat(byDomain).isEqualTo(Map.of("gmail.com", 2L, "other.org", 1L));
+    }
+
+    @Test
+    void itShouldSelectStudentsWithoutManagingThem() {
+        //give
+        Student ninh = underTest.save(new Student("Ninh", "ninh@gmail.com", Gender.MALE));
+        underTest.save(new Student("Jane", "jane@gmail.com", Gender.FEMALE));
+        entityManager.flush();
+        entityManager.clear();
+
+        //when
+        List<Student> all = underTest.selectAll();
+        Student found = underTest.selectById(ninh.getId()).get();
+
+        //then
+        assertThat(all.size()).isEqualTo(2);
+        assertThat(found.getEmail()).isEqualTo("ninh@gmail.com");
+        assertThat(found.getVersion()).isEqualTo(0L);
+        assertThat(all.stream().anyMatch(entityManager.getEntityManager()::contains)).isFalse();
+        assertThat(entityManager.getEntityManager().contains(found)).isFalse();
+        assertThat(underTest.selectById(-1L).isPresent()).isFalse();
+    }
+}
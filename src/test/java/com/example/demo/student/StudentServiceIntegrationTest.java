@@ -0,0 +1,248 @@
+package com.example.demo.student;
+
+import com.example.demo.student.exception.PreconditionFailedException;
+import com.example.demo.student.exception.StudentNotFoundException;
+import com.google.common.util.concurrent.MoreExecutors;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.ImportAutoConfiguration;
+import org.springframework.boot.autoconfigure.cache.CacheType;
+import org.springframework.boot.autoconfigure.jackson.JacksonAutoConfiguration;
+import org.springframework.boot.autoconfigure.validation.ValidationAutoConfiguration;
+import org.springframework.boot.test.autoconfigure.core.AutoConfigureCache;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import javax.persistence.EntityManagerFactory;
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.List;
+import java.util.Optional;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.assertj.core.api.AssertionsForClassTypes.assertThat;
+
+@DataJpaTest(properties = "spring.jpa.properties.hibernate.generate_statistics=true")
+@AutoConfigureCache(cacheProvider = CacheType.SIMPLE)
+@ImportAutoConfiguration({ValidationAutoConfiguration.class, JacksonAutoConfiguration.class})
+@Import({StudentService.class, StudentEmailFilter.class, StudentStatistics.class, StudentListCache.class,
+        StudentChangeFeed.class, StudentBatchWriter.class})
+class StudentServiceIntegrationTest {
+
+    @Autowired
+    private StudentService underTest;
+
+    @Autowired
+    private StudentRepository studentRepository;
+
+    @Autowired
+    private StudentBatchWriter studentBatchWriter;
+
+    @Autowired
+    private StudentEmailFilter studentEmailFilter;
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    @AfterEach
+    void tearDown() {
+        // for the tests committing outside the test transaction
+        studentRepository.deleteAll();
+    }
+
+    @Test
+    void itShouldCacheStudentsById() {
+        //given
+        Student student = underTest.addStudent(
+                new Student("Ninh", "ninh@gmail.com", Gender.MALE));
+
+        //when
+        Optional<Student> first = underTest.getStudentById(student.getId());
+        studentRepository.deleteAll();
+        Optional<Student> second = underTest.getStudentById(student.getId());
+
+        //then
+        assertThat(first).isEqualTo(Optional.of(student));
+        assertThat(second).isEqualTo(Optional.of(student));
+    }
+
+    @Test
+    void itShouldEvictCachedStudentOnUpdateAndDelete() {
+        //given
+        Student student = underTest.addStudent(
+                new Student("Ninh", "ninh@gmail.com", Gender.MALE));
+        underTest.getStudentById(student.getId());
+
+        //when
+        Student edited = new Student("Thanh", "ninh@gmail.com", Gender.MALE);
+        underTest.saveEditStudent(edited, student.getId());
+
+        //then
+        assertThat(underTest.getStudentById(student.getId()).get().getName()).isEqualTo("Thanh");
+
+        //when
+        underTest.deleteStudent(student.getId());
+
+        //then
+        assertThat(underTest.getStudentById(student.getId())).isEqualTo(Optional.empty());
+    }
+
+    @Test
+    void itShouldEvictCachedStudentsOnBatchDelete() {
+        //given
+        Student ninh = underTest.addStudent(new Student("Ninh", "ninh@gmail.com", Gender.MALE));
+        Student jane = underTest.addStudent(new Student("Jane", "jane@gmail.com", Gender.FEMALE));
+        underTest.getStudentById(ninh.getId());
+
+        //when
+        StudentDeleteResult result = underTest.deleteStudents(List.of(ninh.getId(), -1L));
+
+        //then
+        assertThat(result).isEqualTo(new StudentDeleteResult(1, List.of(-1L)));
+        assertThat(underTest.getStudentById(ninh.getId())).isEqualTo(Optional.empty());
+        assertThat(underTest.getStudentsByIds(List.of(ninh.getId(), jane.getId())))
+                .isEqualTo(List.of(jane));
+    }
+
+    @Test
+    void itShouldUpdateWithAtMostTwoStatements() {
+        //given
+        Student student = underTest.addStudent(
+                new Student("Ninh", "ninh@gmail.com", Gender.MALE));
+        Statistics statistics = statistics();
+
+        //when
+        underTest.saveEditStudent(
+                new Student("Thanh", "thanh@gmail.com", Gender.MALE), student.getId());
+
+        //then
+        assertThat(statistics.getPrepareStatementCount()).isLessThanOrEqualTo(2L);
+        assertThat(statistics.getEntityLoadCount()).isEqualTo(0L);
+        assertThat(studentRepository.findById(student.getId()).get().getEmail())
+                .isEqualTo("thanh@gmail.com");
+    }
+
+    @Test
+    void itShouldUpdateKeepingEmailWithAtMostTwoStatements() {
+        //given
+        Student student = underTest.addStudent(
+                new Student("Ninh", "ninh@gmail.com", Gender.MALE));
+        Statistics statistics = statistics();
+
+        //when
+        underTest.saveEditStudent(
+                new Student("Thanh", "ninh@gmail.com", Gender.FEMALE), student.getId());
+
+        //then
+        // the email is the student's own, so the filter cannot rule out a conflict
+        assertThat(statistics.getPrepareStatementCount()).isLessThanOrEqualTo(2L);
+        assertThat(statistics.getEntityLoadCount()).isEqualTo(0L);
+        assertThat(studentRepository.findById(student.getId()).get().getName())
+                .isEqualTo("Thanh");
+    }
+
+    @Test
+    void itShouldDeleteWithOneStatement() {
+        //given
+        Student student = underTest.addStudent(
+                new Student("Ninh", "ninh@gmail.com", Gender.MALE));
+        Statistics statistics = statistics();
+
+        //when
+        underTest.deleteStudent(student.getId());
+
+        //then
+        assertThat(statistics.getPrepareStatementCount()).isEqualTo(1L);
+        assertThat(studentRepository.existsById(student.getId())).isFalse();
+    }
+
+    @Test
+    void itShouldReportMissingStudentOnUpdateAndDelete() {
+        assertThatThrownBy(() -> underTest.saveEditStudent(
+                new Student("Thanh", "thanh@gmail.com", Gender.MALE), -1L))
+                .isInstanceOf(StudentNotFoundException.class);
+        assertThatThrownBy(() -> underTest.deleteStudent(-1L))
+                .isInstanceOf(StudentNotFoundException.class);
+    }
+
+    @Test
+    void itShouldBumpVersionOnUpdate() {
+        //given
+        Student student = underTest.addStudent(
+                new Student("Ninh", "ninh@gmail.com", Gender.MALE));
+        assertThat(student.getVersion()).isEqualTo(0L);
+
+        //when
+        Student updated = underTest.saveEditStudent(
+                new Student("Thanh", "ninh@gmail.com", Gender.MALE), student.getId(), 0L);
+
+        //then
+        assertThat(updated.getVersion()).isEqualTo(1L);
+        assertThat(underTest.getStudentById(student.getId()).get().getVersion()).isEqualTo(1L);
+        assertThatThrownBy(() -> underTest.saveEditStudent(
+                new Student("Dang", "ninh@gmail.com", Gender.MALE), student.getId(), 0L))
+                .isInstanceOf(PreconditionFailedException.class);
+        assertThatThrownBy(() -> underTest.deleteStudent(student.getId(), 0L))
+                .isInstanceOf(PreconditionFailedException.class);
+    }
+
+    @Test
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    void itShouldNarrowBatchDownToEmailTakenConcurrently() {
+        //given
+        studentEmailFilter.rebuild();
+        // taken behind the filter's back, so the batch skips the email lookup
+        studentRepository.save(new Student("Taken", "student7@gmail.com", Gender.FEMALE));
+        List<Student> students = IntStream.range(0, StudentService.FLUSH_SIZE * 2 + 20)
+                .mapToObj(i -> new Student("Student " + i, "student" + i + "@gmail.com", Gender.MALE))
+                .collect(Collectors.toList());
+
+        //when
+        List<StudentBatchResult> results = studentBatchWriter.write(students);
+
+        //then
+        assertThat(results.get(7)).isEqualTo(StudentBatchResult.emailTaken(7, "student7@gmail.com"));
+        assertThat(results.stream()
+                .filter(result -> result.getStatus() == StudentBatchResult.Status.CREATED)
+                .count()).isEqualTo((long) students.size() - 1);
+        assertThat(studentRepository.count()).isEqualTo((long) students.size());
+    }
+
+    @Test
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    void itShouldKeepImportingWhenAnEmailIsTakenConcurrently() {
+        //given
+        StudentImporter importer = new StudentImporter(studentBatchWriter,
+                MoreExecutors.newDirectExecutorService(), 1000, 100, Duration.ofHours(1));
+        studentEmailFilter.rebuild();
+        studentRepository.save(new Student("Taken", "student7@gmail.com", Gender.FEMALE));
+        String csv = IntStream.range(0, 200)
+                .mapToObj(i -> "Student " + i + ",student" + i + "@gmail.com,MALE\n")
+                .collect(Collectors.joining("", "name,email,gender\n", ""));
+
+        //when
+        StudentImportStatus queued = importer.submit(
+                new ByteArrayInputStream(csv.getBytes(StandardCharsets.UTF_8)));
+
+        //then
+        StudentImportStatus status = importer.getStatus(queued.getJobId()).get();
+        assertThat(status.getState()).isEqualTo(StudentImportStatus.State.COMPLETED);
+        assertThat(status.getCreated()).isEqualTo(199L);
+        assertThat(status.getEmailTaken()).isEqualTo(1L);
+        assertThat(studentRepository.count()).isEqualTo(200L);
+    }
+
+    private Statistics statistics() {
+        Statistics statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        statistics.clear();
+        return statistics;
+    }
+}
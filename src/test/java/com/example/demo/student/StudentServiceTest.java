@@ -1,6 +1,8 @@
 package com.example.demo.student;
 
+import com.example.demo.config.ReplicaRoutingDataSource;
 import com.example.demo.student.exception.BadRequestException;
+import com.example.demo.student.exception.PreconditionFailedException;
 import com.example.demo.student.exception.StudentNotFoundException;
 import org.junit.jupiter.api.*;
 import org.junit.jupiter.api.extension.ExtendWith;
@@ -10,9 +12,22 @@ import org.mockito.Mockito;
 import org.mockito.MockitoAnnotations;
 import org.mockito.junit.jupiter.MockitoExtension;
 
+import org.springframework.cache.CacheManager;
+import org.springframework.cache.concurrent.ConcurrentMapCache;
+import org.springframework.cache.support.NoOpCache;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.data.domain.PageRequest;
+
+import javax.persistence.EntityManager;
+import javax.validation.Validation;
+import javax.validation.Validator;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Stream;
 
 import static org.assertj.core.api.Assertions.assertThatThrownBy;
 import static org.assertj.core.api.AssertionsForClassTypes.assertThat;
@@ -26,11 +41,26 @@ class StudentServiceTest {
 
     @Mock
     private StudentRepository studentRepository;
+    @Mock
+    private EntityManager entityManager;
+    @Mock
+    private StudentEmailFilter studentEmailFilter;
+    @Mock
+    private StudentStatistics studentStatistics;
+    @Mock
+    private StudentListCache studentListCache;
+    @Mock
+    private StudentChangeFeed studentChangeFeed;
+    @Mock
+    private CacheManager cacheManager;
+    private final Validator validator = Validation.buildDefaultValidatorFactory().getValidator();
     private StudentService underTest;
 
     @BeforeEach
     void setUp() {
-        underTest = new StudentService(studentRepository);
+        underTest = new StudentService(
+                studentRepository, entityManager, validator, studentEmailFilter, studentStatistics,
+                studentListCache, studentChangeFeed, cacheManager);
     }
 
 //    @Test
@@ -47,7 +77,7 @@ class StudentServiceTest {
         List<Student> students = new ArrayList<>();
         students.add(new Student("John", "John@gmail.com", Gender.MALE));
         students.add(new Student("Jane", "Jane@gmail.com", Gender.MALE));
-        when(studentRepository.findAll()).thenReturn(students);
+        when(studentRepository.selectAll()).thenReturn(students);
 
         // When
         List<Student> result = underTest.getAllStudents();
@@ -62,7 +92,7 @@ class StudentServiceTest {
         Long id = 1L;
         Student student = new Student();
         student.setId(id);
-        Mockito.when(studentRepository.findById(id)).thenReturn(Optional.of(student));
+        Mockito.when(studentRepository.selectById(id)).thenReturn(Optional.of(student));
 
         // Call the service method
         Optional<Student> result = underTest.getStudentById(id);
@@ -89,11 +119,14 @@ class StudentServiceTest {
         ArgumentCaptor<Student> studentArgumentCaptor =
                 ArgumentCaptor.forClass(Student.class);
 
-        verify(studentRepository).save(studentArgumentCaptor.capture());
+        verify(studentRepository).saveAndFlush(studentArgumentCaptor.capture());
 
         Student captureStudent = studentArgumentCaptor.getValue();
 
         assertThat(captureStudent).isEqualTo(student);
+        verify(studentRepository, never()).selectExistsEmail(any());
+        verify(studentStatistics).recordAdded(student);
+        verify(studentChangeFeed).recordCreated(student);
     }
 
     @Test
@@ -106,6 +139,8 @@ class StudentServiceTest {
                 Gender.MALE
         );
 
+        given(studentRepository.saveAndFlush(student))
+                .willThrow(new DataIntegrityViolationException("unique email"));
         given(studentRepository.selectExistsEmail(student.getEmail()))
                 .willReturn(true);
         //when
@@ -114,8 +149,25 @@ class StudentServiceTest {
         assertThatThrownBy(() -> underTest.addStudent(student))
                 .isInstanceOf(BadRequestException.class)
                 .hasMessageContaining("Email " + student.getEmail() + " taken");
+    }
 
-        verify(studentRepository, never()).save(any());
+    @Test
+    void willRethrowOtherIntegrityViolations() {
+        //given
+        Student student = new Student(
+                "Ninh Dang Thanh",
+                "ninh@gmail.com",
+                Gender.MALE
+        );
+        DataIntegrityViolationException violation =
+                new DataIntegrityViolationException("not null");
+        given(studentRepository.saveAndFlush(student)).willThrow(violation);
+        given(studentRepository.selectExistsEmail(student.getEmail()))
+                .willReturn(false);
+
+        //then
+        assertThatThrownBy(() -> underTest.addStudent(student))
+                .isSameAs(violation);
     }
 
     @Test
@@ -128,8 +180,10 @@ class StudentServiceTest {
         );
 
         Long studentId = 1L;
-        given(studentRepository.selectConflictEmail(student.getEmail(), studentId))
+        given(studentEmailFilter.mightContain(student.getEmail()))
                 .willReturn(true);
+        given(studentRepository.selectIdByEmail(student.getEmail()))
+                .willReturn(Optional.of(2L));
         //when
 
         //then
@@ -137,7 +191,7 @@ class StudentServiceTest {
                 .isInstanceOf(BadRequestException.class)
                 .hasMessageContaining("Email " + student.getEmail() + " conflict");
 
-        verify(studentRepository, never()).save(any());
+        verify(studentRepository, never()).updateStudent(any(), any(), any(), any());
     }
 
     @Test
@@ -145,14 +199,17 @@ class StudentServiceTest {
         // create some test data
         Long studentId = 1L;
 
-        // mock the repository method to return true, indicating that the student exists
-        when(studentRepository.existsById(studentId)).thenReturn(true);
+        // mock the repository method to return 1, indicating that the student existed
+        when(studentRepository.deleteStudentById(studentId)).thenReturn(1);
 
-        // call the method being tested
         underTest.deleteStudent(studentId);
 
-        // verify that the repository method was called with the correct arguments
-        verify(studentRepository).deleteById(studentId);
+        // verify that no other query was needed
+        verify(studentRepository).deleteStudentById(studentId);
+        verify(studentStatistics).recordChanged();
+        verify(studentListCache).recordChange();
+        verify(studentChangeFeed).recordDeleted(studentId);
+        verifyNoMoreInteractions(studentRepository);
     }
 
     @Test
@@ -160,8 +217,8 @@ class StudentServiceTest {
         // create some test data
         Long studentId = 1L;
 
-        // mock the repository method to return false, indicating that the student doesn't exist
-        when(studentRepository.existsById(studentId)).thenReturn(false);
+        // mock the repository method to return 0, indicating that the student doesn't exist
+        when(studentRepository.deleteStudentById(studentId)).thenReturn(0);
 
         // call the method being tested
         assertThatThrownBy(() -> underTest.deleteStudent(studentId))
@@ -179,19 +236,425 @@ class StudentServiceTest {
                 Gender.MALE
         );
         Long studentId = 1L;
+        given(studentRepository.updateStudent(studentId, "Ninh Dang Thanh", email, Gender.MALE))
+                .willReturn(1);
+
+        //when
+        Student updated = underTest.saveEditStudent(student, studentId);
+
+        //then
+        assertThat(updated).isEqualTo(student);
+        assertThat(updated.getId()).isEqualTo(studentId);
+        verify(studentRepository, never()).save(any());
+        verify(studentEmailFilter).add(email);
+        verify(studentStatistics).recordChanged();
+    }
+
+    @Test
+    void willNotCountKeptEmailAsRemovedOrUnconfirmed() {
+        //given
+        Student student = new Student("Ninh Dang Thanh", "ninh@gmail.com", Gender.MALE);
+        Long studentId = 1L;
+        given(studentEmailFilter.mightContain("ninh@gmail.com")).willReturn(true);
+        given(studentRepository.selectIdByEmail("ninh@gmail.com")).willReturn(Optional.of(studentId));
+        given(studentRepository.updateStudent(studentId, "Ninh Dang Thanh", "ninh@gmail.com", Gender.MALE))
+                .willReturn(1);
 
         //when
         underTest.saveEditStudent(student, studentId);
 
         //then
-        ArgumentCaptor<Student> studentArgumentCaptor =
-                ArgumentCaptor.forClass(Student.class);
+        verify(studentEmailFilter, never()).recordUnconfirmed();
+        verify(studentEmailFilter, never()).recordRemoval();
+        verify(studentEmailFilter, never()).add(any());
+    }
 
-        verify(studentRepository).save(studentArgumentCaptor.capture());
+    @Test
+    void willCountChangedEmailTheFilterGotWrong() {
+        //given
+        Student student = new Student("Ninh Dang Thanh", "thanh@gmail.com", Gender.MALE);
+        Long studentId = 1L;
+        given(studentEmailFilter.mightContain("thanh@gmail.com")).willReturn(true);
+        given(studentRepository.selectIdByEmail("thanh@gmail.com")).willReturn(Optional.empty());
+        given(studentRepository.updateStudent(studentId, "Ninh Dang Thanh", "thanh@gmail.com", Gender.MALE))
+                .willReturn(1);
 
-        Student captureStudent = studentArgumentCaptor.getValue();
+        //when
+        underTest.saveEditStudent(student, studentId);
 
-        assertThat(captureStudent).isEqualTo(student);
+        //then
+        verify(studentEmailFilter).recordUnconfirmed();
+        verify(studentEmailFilter).recordRemoval();
+        verify(studentEmailFilter).add("thanh@gmail.com");
+    }
+
+    @Test
+    void canSaveEditStudentAtExpectedVersion() {
+        //given
+        Student student = new Student("Ninh Dang Thanh", "ninh@gmail.com", Gender.MALE);
+        Long studentId = 1L;
+        given(studentRepository.updateStudentIfVersion(
+                studentId, "Ninh Dang Thanh", "ninh@gmail.com", Gender.MALE, 3L))
+                .willReturn(1);
+
+        //when
+        Student updated = underTest.saveEditStudent(student, studentId, 3L);
+
+        //then
+        assertThat(updated.getVersion()).isEqualTo(4L);
+    }
+
+    @Test
+    void willThrowWhenEditedStudentHasAnotherVersion() {
+        //given
+        Student student = new Student("Ninh Dang Thanh", "ninh@gmail.com", Gender.MALE);
+        Long studentId = 1L;
+        given(studentRepository.updateStudentIfVersion(
+                studentId, "Ninh Dang Thanh", "ninh@gmail.com", Gender.MALE, 3L))
+                .willReturn(0);
+        given(studentRepository.existsById(studentId)).willReturn(true);
+
+        //then
+        assertThatThrownBy(() -> underTest.saveEditStudent(student, studentId, 3L))
+                .isInstanceOf(PreconditionFailedException.class)
+                .hasMessageContaining("is not at version 3");
+    }
+
+    @Test
+    void willThrowWhenDeletedStudentHasAnotherVersion() {
+        //given
+        Long studentId = 1L;
+        given(studentRepository.deleteStudentByIdIfVersion(studentId, 3L)).willReturn(0);
+        given(studentRepository.existsById(studentId)).willReturn(true);
+
+        //then
+        assertThatThrownBy(() -> underTest.deleteStudent(studentId, 3L))
+                .isInstanceOf(PreconditionFailedException.class);
+    }
+
+    @Test
+    void willThrowWhenEditedStudentDoesNotExist() {
+        //given
+        Student student = new Student("Ninh Dang Thanh", "ninh@gmail.com", Gender.MALE);
+        Long studentId = 1L;
+        given(studentRepository.updateStudent(studentId, "Ninh Dang Thanh", "ninh@gmail.com", Gender.MALE))
+                .willReturn(0);
+
+        //then
+        assertThatThrownBy(() -> underTest.saveEditStudent(student, studentId))
+                .isInstanceOf(StudentNotFoundException.class)
+                .hasMessageContaining("Student with id " + studentId + " does not exists");
+    }
+
+    @Test
+    void canGetFirstStudentPage() {
+        //given
+        Student john = new Student("John", "john@gmail.com", Gender.MALE);
+        john.setId(1L);
+        Student jane = new Student("Jane", "jane@gmail.com", Gender.FEMALE);
+        jane.setId(2L);
+        Student alex = new Student("Alex", "alex@gmail.com", Gender.OTHER);
+        alex.setId(3L);
+        given(studentRepository.selectPageAfter(0L, PageRequest.of(0, 3)))
+                .willReturn(List.of(john, jane, alex));
+
+        //when
+        StudentPage page = underTest.getStudentPage(null, 2, null);
+
+        //then
+        assertThat(page.getStudents()).isEqualTo(List.of(john, jane));
+        assertThat(StudentCursor.decode(page.getNextCursor())).isEqualTo(2L);
+    }
+
+    @Test
+    void canGetLastStudentPageByGender() {
+        //given
+        Student jane = new Student("Jane", "jane@gmail.com", Gender.FEMALE);
+        jane.setId(7L);
+        String cursor = StudentCursor.encode(5L);
+        given(studentRepository.selectPageAfterByGender(5L, Gender.FEMALE, PageRequest.of(0, 3)))
+                .willReturn(List.of(jane));
+
+        //when
+        StudentPage page = underTest.getStudentPage(cursor, 2, Gender.FEMALE);
+
+        //then
+        assertThat(page.getStudents()).isEqualTo(List.of(jane));
+        assertThat(page.getNextCursor()).isNull();
+    }
+
+    @Test
+    void willCapStudentPageSize() {
+        //when
+        underTest.getStudentPage(null, 10_000, null);
+
+        //then
+        verify(studentRepository).selectPageAfter(0L, PageRequest.of(0, StudentService.MAX_PAGE_SIZE + 1));
+    }
+
+    @Test
+    void willThrowWhenCursorIsInvalid() {
+        assertThatThrownBy(() -> underTest.getStudentPage("not-a-cursor", 10, null))
+                .isInstanceOf(BadRequestException.class)
+                .hasMessageContaining("Invalid cursor");
+
+        verifyNoInteractions(studentRepository);
+    }
+
+    @Test
+    void canExportStudents() {
+        //given
+        Student john = new Student("John", "john@gmail.com", Gender.MALE);
+        Student jane = new Student("Jane", "jane@gmail.com", Gender.FEMALE);
+        given(studentRepository.streamAll()).willReturn(Stream.of(john, jane));
+        List<Student> exported = new ArrayList<>();
+
+        //when
+        underTest.exportStudents(exported::add);
+
+        //then
+        assertThat(exported).isEqualTo(List.of(john, jane));
+        verify(entityManager).detach(john);
+        verify(entityManager).detach(jane);
+    }
+
+    @Test
+    void canAddStudentsInBatch() {
+        //given
+        Student created = new Student("John", "john@gmail.com", Gender.MALE);
+        Student invalid = new Student("", "not-an-email", Gender.MALE);
+        Student duplicate = new Student("Johnny", "JOHN@gmail.com", Gender.MALE);
+        Student taken = new Student("Jane", "jane@gmail.com", Gender.FEMALE);
+        given(studentEmailFilter.mightContain(any())).willReturn(true);
+        given(studentRepository.selectExistingEmails(List.of("john@gmail.com", "jane@gmail.com")))
+                .willReturn(List.of("jane@gmail.com"));
+
+        //when
+        List<StudentBatchResult> results = underTest.addStudents(
+                List.of(created, invalid, duplicate, taken));
+
+        //then
+        assertThat(results.get(0).getStatus()).isEqualTo(StudentBatchResult.Status.CREATED);
+        assertThat(results.get(1).getStatus()).isEqualTo(StudentBatchResult.Status.INVALID);
+        assertThat(results.get(1).getMessage()).contains("email", "name");
+        assertThat(results.get(2)).isEqualTo(StudentBatchResult.emailTaken(2, "JOHN@gmail.com"));
+        assertThat(results.get(3)).isEqualTo(StudentBatchResult.emailTaken(3, "jane@gmail.com"));
+
+        verify(entityManager).persist(created);
+        verify(entityManager, times(1)).persist(any());
+        verify(studentEmailFilter).add("john@gmail.com");
+    }
+
+    @Test
+    void willMatchTakenEmailReportedInAnotherCase() {
+        //given
+        Student jane = new Student("Jane", "Jane@Gmail.com", Gender.FEMALE);
+        given(studentEmailFilter.mightContain(any())).willReturn(true);
+        // as a database with a case-insensitive email collation answers
+        given(studentRepository.selectExistingEmails(List.of("Jane@Gmail.com")))
+                .willReturn(List.of("jane@gmail.com"));
+
+        //when
+        List<StudentBatchResult> results = underTest.addStudents(List.of(jane));
+
+        //then
+        assertThat(results).isEqualTo(List.of(StudentBatchResult.emailTaken(0, "Jane@Gmail.com")));
+        verify(entityManager, never()).persist(any());
+    }
+
+    @Test
+    void willSkipEmailLookupWhenFilterRulesItOut() {
+        //given
+        Student john = new Student("John", "john@gmail.com", Gender.MALE);
+        Student jane = new Student("Jane", "jane@gmail.com", Gender.FEMALE);
+        given(studentEmailFilter.mightContain("john@gmail.com")).willReturn(false);
+        given(studentEmailFilter.mightContain("jane@gmail.com")).willReturn(true);
+        given(studentRepository.updateStudent(1L, "John", "john@gmail.com", Gender.MALE))
+                .willReturn(1);
+
+        //when
+        underTest.addStudents(List.of(john, jane));
+        underTest.saveEditStudent(john, 1L);
+
+        //then
+        verify(studentRepository).selectExistingEmails(List.of("jane@gmail.com"));
+        verify(studentRepository, never()).selectIdByEmail(any());
+    }
+
+    @Test
+    void willReadStudentForSharedCacheFromPrimary() {
+        //given
+        given(cacheManager.getCache(StudentService.STUDENT_CACHE))
+                .willReturn(new ConcurrentMapCache(StudentService.STUDENT_CACHE));
+        AtomicBoolean onPrimary = new AtomicBoolean();
+        given(studentRepository.selectById(1L)).willAnswer(invocation -> {
+            onPrimary.set(ReplicaRoutingDataSource.isPrimaryOnly());
+            return Optional.empty();
+        });
+
+        //when
+        underTest.getStudentById(1L);
+
+        //then
+        assertThat(onPrimary.get()).isTrue();
+        assertThat(ReplicaRoutingDataSource.isPrimaryOnly()).isFalse();
+    }
+
+    @Test
+    void willLeaveStudentReadToReplicaWithoutCache() {
+        //given
+        given(cacheManager.getCache(StudentService.STUDENT_CACHE))
+                .willReturn(new NoOpCache(StudentService.STUDENT_CACHE));
+        AtomicBoolean onPrimary = new AtomicBoolean(true);
+        given(studentRepository.selectById(1L)).willAnswer(invocation -> {
+            onPrimary.set(ReplicaRoutingDataSource.isPrimaryOnly());
+            return Optional.empty();
+        });
+
+        //when
+        underTest.getStudentById(1L);
+
+        //then
+        assertThat(onPrimary.get()).isFalse();
+    }
+
+    @Test
+    void canGetStudentsByIdsInRequestOrder() {
+        //given
+        Student john = new Student(1L, "John", "john@gmail.com", Gender.MALE, 0L);
+        Student jane = new Student(2L, "Jane", "jane@gmail.com", Gender.FEMALE, 0L);
+        given(studentRepository.selectByIds(List.of(2L, 3L, 1L))).willReturn(List.of(john, jane));
+
+        //when
+        List<Student> result = underTest.getStudentsByIds(List.of(2L, 3L, 2L, 1L));
+
+        //then
+        assertThat(result).isEqualTo(List.of(jane, john));
+    }
+
+    @Test
+    void willLookUpStudentsByIdsInChunks() {
+        //given
+        List<Long> ids = new ArrayList<>();
+        for (long id = 1; id <= StudentService.ID_LOOKUP_CHUNK_SIZE + 1; id++) {
+            ids.add(id);
+        }
+
+        //when
+        underTest.getStudentsByIds(ids);
+
+        //then
+        verify(studentRepository).selectByIds(ids.subList(0, StudentService.ID_LOOKUP_CHUNK_SIZE));
+        verify(studentRepository).selectByIds(List.of(StudentService.ID_LOOKUP_CHUNK_SIZE + 1L));
+    }
+
+    @Test
+    void canDeleteStudentsReportingMissingIds() {
+        //given
+        given(studentRepository.selectExistingIds(List.of(1L, 2L, 3L))).willReturn(List.of(1L, 3L));
+        given(studentRepository.deleteStudentsByIds(List.of(1L, 3L))).willReturn(2);
+
+        //when
+        StudentDeleteResult result = underTest.deleteStudents(List.of(1L, 2L, 3L, 1L));
+
+        //then
+        assertThat(result).isEqualTo(new StudentDeleteResult(2, List.of(2L)));
+        verify(studentEmailFilter, times(2)).recordRemoval();
+        verify(studentStatistics, times(2)).recordChanged();
+        verify(studentListCache).recordChange();
+        verify(studentChangeFeed).recordDeleted(1L);
+        verify(studentChangeFeed).recordDeleted(3L);
+        verifyNoMoreInteractions(studentChangeFeed);
+    }
+
+    @Test
+    void willNotDeleteWhenNoIdMatches() {
+        //given
+        given(studentRepository.selectExistingIds(List.of(7L))).willReturn(List.of());
+
+        //when
+        StudentDeleteResult result = underTest.deleteStudents(List.of(7L));
+
+        //then
+        assertThat(result).isEqualTo(new StudentDeleteResult(0, List.of(7L)));
+        verify(studentRepository, never()).deleteStudentsByIds(any());
+        verifyNoInteractions(studentListCache);
+    }
+
+    @Test
+    void willThrowWhenIdBatchIsInvalid() {
+        //given
+        List<Long> tooMany = new ArrayList<>();
+        for (long id = 0; id <= StudentService.MAX_BATCH_SIZE; id++) {
+            tooMany.add(id);
+        }
+
+        //then
+        assertThatThrownBy(() -> underTest.deleteStudents(tooMany))
+                .isInstanceOf(BadRequestException.class)
+                .hasMessageContaining("exceeds " + StudentService.MAX_BATCH_SIZE);
+        assertThatThrownBy(() -> underTest.getStudentsByIds(Arrays.asList(1L, null)))
+                .isInstanceOf(BadRequestException.class)
+                .hasMessageContaining("Ids must not be null");
+
+        verifyNoInteractions(studentRepository);
+    }
+
+    @Test
+    void willThrowWhenBatchIsTooLarge() {
+        //given
+        List<Student> students = new ArrayList<>();
+        for (int i = 0; i <= StudentService.MAX_BATCH_SIZE; i++) {
+            students.add(new Student("John", "john" + i + "@gmail.com", Gender.MALE));
+        }
+
+        //then
+        assertThatThrownBy(() -> underTest.addStudents(students))
+                .isInstanceOf(BadRequestException.class)
+                .hasMessageContaining("exceeds " + StudentService.MAX_BATCH_SIZE);
+
+        verifyNoInteractions(studentRepository, entityManager);
+    }
+
+
+    @Test
+    void canSearchWithNormalizedDomainAndCappedLimit() {
+        //given
+        List<StudentSummary> found = List.of(
+                new StudentSummary(1L, "Ninh", "ninh@gmail.com", Gender.MALE));
+        given(studentRepository.search(null, Gender.MALE, "gmail.com", StudentService.MAX_SEARCH_LIMIT))
+                .willReturn(found);
+
+        //when
+        List<StudentSummary> result = underTest.searchStudents(" ", Gender.MALE, " GMail.com ", 10_000);
+
+        //then
+        assertThat(result).isEqualTo(found);
     }
 
-}
\ No newline at end of file
+    @Test
+    void willThrowWhenSearchHasNoFilter() {
+        //given
+        //when
+        //then
+        assertThatThrownBy(() -> underTest.searchStudents(null, null, "", 10))
+                .isInstanceOf(BadRequestException.class)
+                .hasMessageContaining("Search needs a name, gender or emailDomain");
+        verifyNoInteractions(studentRepository);
+    }
+
+    @Test
+    void canGetStudentStatsWithoutQuery() {
+        //given
+        StudentStats stats = new StudentStats(
+                1, Map.of(Gender.MALE, 1L), Map.of("gmail.com", 1L), null, 0);
+        given(studentStatistics.getStats()).willReturn(stats);
+
+        //when
+        StudentStats result = underTest.getStudentStats();
+
+        //then
+        assertThat(result).isEqualTo(stats);
+        verifyNoInteractions(studentRepository);
+    }
+}
@@ -0,0 +1,157 @@
+package com.example.demo.student;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.BDDMockito.willAnswer;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+
+@ExtendWith(MockitoExtension.class)
+class StudentStatisticsTest {
+
+    private static final Instant NOW = Instant.parse("2021-03-01T10:00:00Z");
+
+    @Mock
+    private StudentRepository studentRepository;
+
+    private StudentStatistics underTest;
+
+    @BeforeEach
+    void setUp() {
+        underTest = new StudentStatistics(
+                studentRepository, Duration.ofMinutes(5), Clock.fixed(NOW, ZoneOffset.UTC));
+    }
+
+    @Test
+    void canCountAddedStudentsWithoutQuery() {
+        //given
+        underTest.recordAdded(new Student("Ninh", "ninh@gmail.com", Gender.MALE));
+        underTest.recordAdded(new Student("Jane", "jane@Gmail.com", Gender.FEMALE));
+
+        //when
+        StudentStats stats = underTest.getStats();
+
+        //then
+        assertThat(stats.getTotal()).isEqualTo(2);
+        assertThat(stats.getByGender()).isEqualTo(Map.of(Gender.MALE, 1L, Gender.FEMALE, 1L));
+        assertThat(stats.getByEmailDomain()).isEqualTo(Map.of("gmail.com", 2L));
+        assertThat(stats.getReconciledAt()).isNull();
+    }
+
+    @Test
+    void canReconcileFromDatabase() {
+        //given
+        givenDatabaseCounts(Map.of(Gender.MALE, 3L), Map.of("gmail.com", 2L, "other.org", 1L));
+        underTest.recordAdded(new Student("Ninh", "ninh@gmail.com", Gender.FEMALE));
+        underTest.recordChanged();
+
+        //when
+        underTest.reconcileIfNeeded();
+        StudentStats stats = underTest.getStats();
+
+        //then
+        assertThat(stats.getTotal()).isEqualTo(3);
+        assertThat(stats.getByGender()).isEqualTo(Map.of(Gender.MALE, 3L));
+        assertThat(stats.getByEmailDomain()).isEqualTo(Map.of("gmail.com", 2L, "other.org", 1L));
+        assertThat(stats.getReconciledAt()).isEqualTo(NOW);
+        assertThat(stats.getUnreconciledChanges()).isZero();
+    }
+
+    @Test
+    void willKeepStudentsAddedWhileReconciling() {
+        //given
+        given(studentRepository.countByGender()).willReturn(List.of(genderCount(Gender.MALE, 1L)));
+        // a student is committed while the domains are being counted
+        willAnswer(invocation -> {
+            underTest.recordAdded(new Student("Jane", "jane@gmail.com", Gender.FEMALE));
+            return List.of(domainCount("gmail.com", 1L));
+        }).given(studentRepository).countByEmailDomain();
+
+        //when
+        underTest.reconcile();
+        StudentStats stats = underTest.getStats();
+
+        //then
+        assertThat(stats.getTotal()).isEqualTo(2);
+        assertThat(stats.getByGender()).isEqualTo(Map.of(Gender.MALE, 1L, Gender.FEMALE, 1L));
+        assertThat(stats.getByEmailDomain()).isEqualTo(Map.of("gmail.com", 2L));
+    }
+
+    @Test
+    void willSkipReconcileWhenNothingChanged() {
+        //given
+        givenDatabaseCounts(Map.of(Gender.MALE, 1L), Map.of("gmail.com", 1L));
+        underTest.reconcile();
+
+        //when
+        underTest.reconcileIfNeeded();
+
+        //then
+        verify(studentRepository).countByGender();
+    }
+
+    @Test
+    void willKeepCountsWhenReconcileFails() {
+        //given
+        underTest.recordAdded(new Student("Ninh", "ninh@gmail.com", Gender.MALE));
+        given(studentRepository.countByGender()).willThrow(new IllegalStateException("database down"));
+
+        //when
+        //then
+        assertThatThrownBy(() -> underTest.reconcile()).isInstanceOf(IllegalStateException.class);
+        assertThat(underTest.getStats().getTotal()).isEqualTo(1);
+        verify(studentRepository, never()).countByEmailDomain();
+    }
+
+    private void givenDatabaseCounts(Map<Gender, Long> byGender, Map<String, Long> byDomain) {
+        given(studentRepository.countByGender()).willReturn(byGender.entrySet().stream()
+                .map(e -> genderCount(e.getKey(), e.getValue()))
+                .collect(Collectors.toList()));
+        given(studentRepository.countByEmailDomain()).willReturn(byDomain.entrySet().stream()
+                .map(e -> domainCount(e.getKey(), e.getValue()))
+                .collect(Collectors.toList()));
+    }
+
+    private static StudentRepository.GenderCount genderCount(Gender gender, long total) {
+        return new StudentRepository.GenderCount() {
+            @Override
+            public Gender getKey() {
+                return gender;
+            }
+
+            @Override
+            public long getTotal() {
+                return total;
+            }
+        };
+    }
+
+    private static StudentRepository.EmailDomainCount domainCount(String domain, long total) {
+        return new StudentRepository.EmailDomainCount() {
+            @Override
+            public String getKey() {
+                return domain;
+            }
+
+            @Override
+            public long getTotal() {
+                return total;
+            }
+        };
+    }
+}